@@ -0,0 +1,77 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures a tick that makes a number of calls to a resource that blocks, such as
+ * one backed by a database, made in turn through a normal query against the same
+ * calls made through an asynchronous query and then waited for together.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"16"})
+    public int calls;
+    
+    private Economy economy;
+    private AsyncEconomy async;
+    
+    @Setup
+    public void setup() {
+        final SimpleLibrary target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        target.register(new Database());
+        target.setAsyncLimit(calls);
+        this.economy = target.lookFor(Economy.class);
+        this.async = target.lookFor(AsyncEconomy.class);
+    }
+    
+    @Benchmark
+    public double blocking() {
+        double total = 0;
+        for (int i = 0; i < calls; i++) total += economy.balance(i);
+        return total;
+    }
+    
+    @Benchmark
+    public double async() {
+        final CompletableFuture<?>[] futures = new CompletableFuture[calls];
+        for (int i = 0; i < calls; i++) futures[i] = async.balance(i);
+        double total = 0;
+        for (final CompletableFuture<?> future : futures) total += (Double) future.join();
+        return total;
+    }
+    
+    //region Stubs
+    public interface Economy {
+        double balance(int id);
+    }
+    
+    public interface AsyncEconomy {
+        CompletableFuture<Double> balance(int id);
+    }
+    
+    public static class Database {
+        public double balance(int id) {
+            LockSupport.parkNanos(50_000);
+            return id * 10.0;
+        }
+    }
+    //endregion
+
+}
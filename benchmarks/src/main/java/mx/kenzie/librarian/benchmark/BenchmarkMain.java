@@ -0,0 +1,24 @@
+package mx.kenzie.librarian.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH, writing the results as JSON unless another format or file is given,
+ * so that runs can be compared by tooling.
+ *
+ * All the usual JMH options are passed through.
+ *
+ * @author Moderocky
+ */
+public class BenchmarkMain {
+    
+    public static void main(String... args) throws Exception {
+        final List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) arguments.addAll(0, List.of("-rf", "json"));
+        if (!arguments.contains("-rff")) arguments.addAll(0, List.of("-rff", "librarian-benchmarks.json"));
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+
+}
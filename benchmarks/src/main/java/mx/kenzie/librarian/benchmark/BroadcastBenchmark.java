@@ -0,0 +1,76 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.Broadcast;
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.Reduction;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a query broadcast to every registered provider and summed, against
+ * a caller looping over the providers it found itself.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"4", "16"})
+    public int providers;
+    
+    private Players players;
+    private Provider[] found;
+    private int world;
+    
+    @Setup
+    public void setup() {
+        final Library<Object> target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        for (int i = 0; i < providers; i++) target.register(new Provider(i));
+        this.players = target.lookForBroadcast(Players.class);
+        this.found = target.getAllResources(Provider.class);
+        this.world = 3;
+    }
+    
+    @Benchmark
+    public long broadcast() {
+        return players.online(world);
+    }
+    
+    @Benchmark
+    public long loop() {
+        long total = 0;
+        for (final Provider provider : found) total += provider.online(world);
+        return total;
+    }
+    
+    //region Stubs
+    public interface Players {
+        @Broadcast(Reduction.SUM)
+        long online(int world);
+    }
+    
+    public static class Provider {
+        private final int players;
+        
+        public Provider(int players) {
+            this.players = players;
+        }
+        
+        public int online(int world) {
+            return players + world;
+        }
+    }
+    //endregion
+
+}
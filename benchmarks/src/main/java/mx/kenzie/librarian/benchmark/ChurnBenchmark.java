@@ -0,0 +1,80 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures read throughput while another thread keeps registering and
+ * unregistering resources.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"100", "1000"})
+    public int resources;
+    
+    private Library<Object> target;
+    
+    @Setup
+    public void setup() {
+        this.target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        for (int i = 0; i < resources; i++) target.register(new Filler());
+        target.register(new Provider());
+    }
+    
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public Object getResource() {
+        return target.getResource(Provider.class);
+    }
+    
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public Query lookFor() {
+        return target.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public boolean churn() {
+        final Filler filler = new Filler();
+        target.register(filler);
+        return target.unregister(filler);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a();
+    }
+    
+    public static class Filler {
+        public int b() {
+            return 0;
+        }
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+    }
+    //endregion
+    
+}
@@ -0,0 +1,65 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.LibraryQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the first query of a fresh JVM, with an endpoint generated at
+ * compile time by the annotation processor and with one generated at runtime.
+ *
+ * Each fork runs a single shot, so class loading of the library and ASM is included.
+ *
+ * @author Moderocky
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ColdStartBenchmark {
+    
+    @Benchmark
+    public Object precompiled() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        library.register(new Provider());
+        final Precompiled query = library.lookFor(Precompiled.class);
+        return query.a() + query.b(7);
+    }
+    
+    @Benchmark
+    public Object generated() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        library.register(new Provider());
+        final Generated query = library.lookFor(Generated.class);
+        return query.a() + query.b(7);
+    }
+    
+    //region Stubs
+    @LibraryQuery
+    public interface Precompiled {
+        int a();
+        
+        int b(int value);
+    }
+    
+    public interface Generated {
+        int a();
+        
+        int b(int value);
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+        
+        public int b(int value) {
+            return value * 2;
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,110 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls to query methods inherited from generic super-interfaces, through bridges
+ * and to unmatched default methods, on compiled and proxy endpoints, against direct calls
+ * on the resource.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HierarchyBenchmark {
+    
+    private Member compiled;
+    private Member proxy;
+    private Person person;
+    private String value;
+    
+    @Setup
+    public void setup() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        final SimpleLibrary simple = new SimpleLibrary();
+        this.person = new Person();
+        library.register(person);
+        simple.register(person);
+        this.compiled = library.lookFor(Member.class);
+        this.proxy = simple.lookFor(Member.class);
+        this.value = "alice";
+    }
+    
+    @Benchmark
+    public int genericDirect() {
+        return person.rank(value);
+    }
+    
+    @Benchmark
+    public int genericCompiled() {
+        return compiled.rank(value);
+    }
+    
+    @Benchmark
+    public int genericProxy() {
+        return proxy.rank(value);
+    }
+    
+    @Benchmark
+    public Object bridgeDirect() {
+        return person.id();
+    }
+    
+    @Benchmark
+    public Object bridgeCompiled() {
+        return ((Identified) compiled).id();
+    }
+    
+    @Benchmark
+    public Object bridgeProxy() {
+        return ((Identified) proxy).id();
+    }
+    
+    @Benchmark
+    public int defaultCompiled() {
+        return compiled.size();
+    }
+    
+    @Benchmark
+    public int defaultProxy() {
+        return proxy.size();
+    }
+    
+    //region Stubs
+    public interface Ranking<Type> {
+        int rank(Type value);
+        
+        default int size() {
+            return 1;
+        }
+    }
+    
+    public interface Identified {
+        Object id();
+    }
+    
+    public interface Member extends Ranking<String>, Identified {
+        @Override
+        String id();
+    }
+    
+    public static class Person {
+        public int rank(String value) {
+            return value.length();
+        }
+        
+        public String id() {
+            return "7";
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,146 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.InvocationStrategy;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.RecordingMetrics;
+import mx.kenzie.librarian.RemoteLibrary;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-call cost of each kind of endpoint against a direct call,
+ * for primitive and object signatures, and for a query served by two resources.
+ *
+ * The metrics case is a compiled endpoint that times every call into a counter.
+ * The remote endpoint calls objects exported to a registry in this JVM, so each
+ * call is a loopback round trip.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+    
+    @Param({"direct", "reflection", "handle", "compiled", "metrics", "remote"})
+    public String endpoint;
+    
+    private Library<?> library;
+    private Query query;
+    private int number;
+    private long wide;
+    private String text;
+    
+    @Setup
+    public void setup() {
+        this.number = 7;
+        this.wide = 11L;
+        this.text = "text";
+        final Primary primary = new Primary();
+        final Secondary secondary = new Secondary();
+        switch (endpoint) {
+            case "direct" -> this.query = new Direct(primary, secondary);
+            case "remote" -> {
+                final RemoteLibrary remote = new RemoteLibrary();
+                remote.register(primary);
+                remote.register(secondary);
+                this.library = remote;
+                this.query = remote.lookFor(Query.class);
+            }
+            default -> {
+                final Library<Object> local = switch (endpoint) {
+                    case "reflection" -> new SimpleLibrary(InvocationStrategy.REFLECTION);
+                    case "handle" -> new SimpleLibrary(InvocationStrategy.METHOD_HANDLE);
+                    case "metrics" -> new CompiledEndpointLibrary(new RecordingMetrics());
+                    default -> new CompiledEndpointLibrary();
+                };
+                local.register(primary);
+                local.register(secondary);
+                this.library = local;
+                this.query = local.lookFor(Query.class);
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        if (library != null) library.empty();
+    }
+    
+    @Benchmark
+    public int primitive() {
+        return query.primitive(number);
+    }
+    
+    @Benchmark
+    public String object() {
+        return query.object(text);
+    }
+    
+    @Benchmark
+    public long multiple() {
+        return query.primitive(number) + query.wide(wide);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int primitive(int value);
+        
+        String object(String value);
+        
+        long wide(long value);
+    }
+    
+    public interface PrimaryService extends Remote {
+        int primitive(int value) throws RemoteException;
+        
+        String object(String value) throws RemoteException;
+    }
+    
+    public interface SecondaryService extends Remote {
+        long wide(long value) throws RemoteException;
+    }
+    
+    public static class Primary implements PrimaryService {
+        public int primitive(int value) {
+            return value * 2;
+        }
+        
+        public String object(String value) {
+            return value;
+        }
+    }
+    
+    public static class Secondary implements SecondaryService {
+        public long wide(long value) {
+            return value + 1;
+        }
+    }
+    
+    record Direct(Primary primary, Secondary secondary) implements Query {
+        @Override
+        public int primitive(int value) {
+            return primary.primitive(value);
+        }
+        
+        @Override
+        public String object(String value) {
+            return primary.object(value);
+        }
+        
+        @Override
+        public long wide(long value) {
+            return secondary.wide(value);
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,92 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls through a compiled endpoint against the array-backed
+ * endpoint layout it replaced and a direct call on the resource.
+ *
+ * The array layout is reproduced by hand: the old generated code loaded
+ * the target from an {@code Object[]} field and cast it on every call.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    
+    private Provider direct;
+    private Query fields;
+    private Query array;
+    private int value;
+    
+    @Setup
+    public void setup() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        this.direct = new Provider();
+        library.register(direct);
+        this.fields = library.lookFor(Query.class);
+        this.array = new ArrayLayout(new Object[]{direct, direct});
+        this.value = 7;
+    }
+    
+    @Benchmark
+    public int direct() {
+        return direct.a() + direct.b(value);
+    }
+    
+    @Benchmark
+    public int fields() {
+        return fields.a() + fields.b(value);
+    }
+    
+    @Benchmark
+    public int array() {
+        return array.a() + array.b(value);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a();
+        
+        int b(int value);
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+        
+        public int b(int value) {
+            return value * 2;
+        }
+    }
+    
+    static final class ArrayLayout implements Query {
+        private final Object[] targets;
+        
+        ArrayLayout(Object[] targets) {
+            this.targets = targets;
+        }
+        
+        @Override
+        public int a() {
+            return ((Provider) targets[0]).a();
+        }
+        
+        @Override
+        public int b(int value) {
+            return ((Provider) targets[1]).b(value);
+        }
+    }
+    //endregion
+    
+}
@@ -0,0 +1,437 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures binding a large query and calling two of its methods, as a plugin
+ * using a small part of a server facade would, with eager and lazy binding.
+ *
+ * Each lookup follows a change to the resources, so the endpoint is bound again.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyBindingBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"false", "true"})
+    public boolean lazy;
+    
+    private SimpleLibrary target;
+    private final Server marker = new Server();
+    
+    @Setup
+    public void setup() {
+        this.target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        target.setLazy(lazy);
+        target.register(new Server());
+    }
+    
+    @Setup(Level.Invocation)
+    public void invalidate() {
+        target.register(marker);
+        target.unregister(marker);
+    }
+    
+    @Benchmark
+    public int lookForAndCall() {
+        final Facade facade = target.lookFor(Facade.class);
+        return facade.m0(1) + facade.m1(2);
+    }
+    
+    @Benchmark
+    public int firstLookFor(Fresh fresh) {
+        final Facade facade = fresh.target.lookFor(Facade.class);
+        return facade.m0(1) + facade.m1(2);
+    }
+    
+    @State(Scope.Thread)
+    public static class Fresh {
+        private SimpleLibrary target;
+        
+        @Setup(Level.Invocation)
+        public void create(LazyBindingBenchmark benchmark) {
+            this.target = benchmark.library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+            target.setLazy(benchmark.lazy);
+            target.register(new Server());
+        }
+    }
+    
+    //region Stubs
+    public interface Facade {
+        int m0(int value);
+        
+        int m1(int value);
+        
+        int m2(int value);
+        
+        int m3(int value);
+        
+        int m4(int value);
+        
+        int m5(int value);
+        
+        int m6(int value);
+        
+        int m7(int value);
+        
+        int m8(int value);
+        
+        int m9(int value);
+        
+        int m10(int value);
+        
+        int m11(int value);
+        
+        int m12(int value);
+        
+        int m13(int value);
+        
+        int m14(int value);
+        
+        int m15(int value);
+        
+        int m16(int value);
+        
+        int m17(int value);
+        
+        int m18(int value);
+        
+        int m19(int value);
+        
+        int m20(int value);
+        
+        int m21(int value);
+        
+        int m22(int value);
+        
+        int m23(int value);
+        
+        int m24(int value);
+        
+        int m25(int value);
+        
+        int m26(int value);
+        
+        int m27(int value);
+        
+        int m28(int value);
+        
+        int m29(int value);
+        
+        int m30(int value);
+        
+        int m31(int value);
+        
+        int m32(int value);
+        
+        int m33(int value);
+        
+        int m34(int value);
+        
+        int m35(int value);
+        
+        int m36(int value);
+        
+        int m37(int value);
+        
+        int m38(int value);
+        
+        int m39(int value);
+        
+        int m40(int value);
+        
+        int m41(int value);
+        
+        int m42(int value);
+        
+        int m43(int value);
+        
+        int m44(int value);
+        
+        int m45(int value);
+        
+        int m46(int value);
+        
+        int m47(int value);
+        
+        int m48(int value);
+        
+        int m49(int value);
+        
+        int m50(int value);
+        
+        int m51(int value);
+        
+        int m52(int value);
+        
+        int m53(int value);
+        
+        int m54(int value);
+        
+        int m55(int value);
+        
+        int m56(int value);
+        
+        int m57(int value);
+        
+        int m58(int value);
+        
+        int m59(int value);
+    }
+    
+    public static class Server {
+        public int m0(int value) {
+            return value + 0;
+        }
+        
+        public int m1(int value) {
+            return value + 1;
+        }
+        
+        public int m2(int value) {
+            return value + 2;
+        }
+        
+        public int m3(int value) {
+            return value + 3;
+        }
+        
+        public int m4(int value) {
+            return value + 4;
+        }
+        
+        public int m5(int value) {
+            return value + 5;
+        }
+        
+        public int m6(int value) {
+            return value + 6;
+        }
+        
+        public int m7(int value) {
+            return value + 7;
+        }
+        
+        public int m8(int value) {
+            return value + 8;
+        }
+        
+        public int m9(int value) {
+            return value + 9;
+        }
+        
+        public int m10(int value) {
+            return value + 10;
+        }
+        
+        public int m11(int value) {
+            return value + 11;
+        }
+        
+        public int m12(int value) {
+            return value + 12;
+        }
+        
+        public int m13(int value) {
+            return value + 13;
+        }
+        
+        public int m14(int value) {
+            return value + 14;
+        }
+        
+        public int m15(int value) {
+            return value + 15;
+        }
+        
+        public int m16(int value) {
+            return value + 16;
+        }
+        
+        public int m17(int value) {
+            return value + 17;
+        }
+        
+        public int m18(int value) {
+            return value + 18;
+        }
+        
+        public int m19(int value) {
+            return value + 19;
+        }
+        
+        public int m20(int value) {
+            return value + 20;
+        }
+        
+        public int m21(int value) {
+            return value + 21;
+        }
+        
+        public int m22(int value) {
+            return value + 22;
+        }
+        
+        public int m23(int value) {
+            return value + 23;
+        }
+        
+        public int m24(int value) {
+            return value + 24;
+        }
+        
+        public int m25(int value) {
+            return value + 25;
+        }
+        
+        public int m26(int value) {
+            return value + 26;
+        }
+        
+        public int m27(int value) {
+            return value + 27;
+        }
+        
+        public int m28(int value) {
+            return value + 28;
+        }
+        
+        public int m29(int value) {
+            return value + 29;
+        }
+        
+        public int m30(int value) {
+            return value + 30;
+        }
+        
+        public int m31(int value) {
+            return value + 31;
+        }
+        
+        public int m32(int value) {
+            return value + 32;
+        }
+        
+        public int m33(int value) {
+            return value + 33;
+        }
+        
+        public int m34(int value) {
+            return value + 34;
+        }
+        
+        public int m35(int value) {
+            return value + 35;
+        }
+        
+        public int m36(int value) {
+            return value + 36;
+        }
+        
+        public int m37(int value) {
+            return value + 37;
+        }
+        
+        public int m38(int value) {
+            return value + 38;
+        }
+        
+        public int m39(int value) {
+            return value + 39;
+        }
+        
+        public int m40(int value) {
+            return value + 40;
+        }
+        
+        public int m41(int value) {
+            return value + 41;
+        }
+        
+        public int m42(int value) {
+            return value + 42;
+        }
+        
+        public int m43(int value) {
+            return value + 43;
+        }
+        
+        public int m44(int value) {
+            return value + 44;
+        }
+        
+        public int m45(int value) {
+            return value + 45;
+        }
+        
+        public int m46(int value) {
+            return value + 46;
+        }
+        
+        public int m47(int value) {
+            return value + 47;
+        }
+        
+        public int m48(int value) {
+            return value + 48;
+        }
+        
+        public int m49(int value) {
+            return value + 49;
+        }
+        
+        public int m50(int value) {
+            return value + 50;
+        }
+        
+        public int m51(int value) {
+            return value + 51;
+        }
+        
+        public int m52(int value) {
+            return value + 52;
+        }
+        
+        public int m53(int value) {
+            return value + 53;
+        }
+        
+        public int m54(int value) {
+            return value + 54;
+        }
+        
+        public int m55(int value) {
+            return value + 55;
+        }
+        
+        public int m56(int value) {
+            return value + 56;
+        }
+        
+        public int m57(int value) {
+            return value + 57;
+        }
+        
+        public int m58(int value) {
+            return value + 58;
+        }
+        
+        public int m59(int value) {
+            return value + 59;
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,99 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls through the invokedynamic call sites of compiled endpoints, to resource
+ * methods declared on the class, on an interface and as static methods, against direct
+ * calls on the resource. Live endpoints call through sites that follow the library.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkageBenchmark {
+    
+    private Query endpoint;
+    private Query live;
+    private Provider provider;
+    private int value;
+    
+    @Setup
+    public void setup() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        this.provider = new Provider();
+        library.register(provider);
+        this.endpoint = library.lookFor(Query.class);
+        this.live = library.lookForLive(Query.class);
+        this.value = 3;
+    }
+    
+    @Benchmark
+    public int virtualDirect() {
+        return provider.a(value);
+    }
+    
+    @Benchmark
+    public int virtualEndpoint() {
+        return endpoint.a(value);
+    }
+    
+    @Benchmark
+    public int virtualLive() {
+        return live.a(value);
+    }
+    
+    @Benchmark
+    public int interfaceDirect() {
+        return provider.b(value);
+    }
+    
+    @Benchmark
+    public int interfaceEndpoint() {
+        return endpoint.b(value);
+    }
+    
+    @Benchmark
+    public int staticDirect() {
+        return Provider.c(value);
+    }
+    
+    @Benchmark
+    public int staticEndpoint() {
+        return endpoint.c(value);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a(int value);
+        
+        int b(int value);
+        
+        int c(int value);
+    }
+    
+    public interface Shared {
+        default int b(int value) {
+            return value * 3;
+        }
+    }
+    
+    public static class Provider implements Shared {
+        public int a(int value) {
+            return value + 1;
+        }
+        
+        public static int c(int value) {
+            return value - 1;
+        }
+    }
+    //endregion
+
+}
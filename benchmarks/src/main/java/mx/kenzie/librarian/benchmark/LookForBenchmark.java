@@ -0,0 +1,135 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of binding a query interface as the number of
+ * registered resources grows.
+ *
+ * The only resource able to satisfy the query is registered last,
+ * which is the worst case for a linear scan of the resources.
+ *
+ * Warm lookups return the endpoint cached for the current resources.
+ * Cold lookups follow a change to the resources, so the endpoint is bound again.
+ * The very first lookup in a JVM is measured by {@link ColdStartBenchmark}.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookForBenchmark {
+    
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int resources;
+    
+    private Library<Object> simple;
+    private Library<Object> compiled;
+    
+    @Setup
+    public void setup() {
+        this.simple = new SimpleLibrary();
+        this.compiled = new CompiledEndpointLibrary();
+        for (int i = 0; i < resources; i++) {
+            simple.register(new Filler());
+            compiled.register(new Filler());
+        }
+        simple.register(new Provider());
+        compiled.register(new Provider());
+    }
+    
+    @Benchmark
+    public Query simpleLookFor() {
+        return simple.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    public Query compiledLookFor() {
+        return compiled.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    public Query simpleLookForCold(Cold cold) {
+        return simple.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    public Query compiledLookForCold(Cold cold) {
+        return compiled.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    public Object lookForMethod() {
+        return simple.lookForMethod(int.class, "d", int.class);
+    }
+    
+    @State(Scope.Thread)
+    public static class Cold {
+        private final Filler marker = new Filler();
+        
+        @Setup(Level.Invocation)
+        public void invalidate(LookForBenchmark benchmark) {
+            benchmark.simple.register(marker);
+            benchmark.simple.unregister(marker);
+            benchmark.compiled.register(marker);
+            benchmark.compiled.unregister(marker);
+        }
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a();
+        
+        int b();
+        
+        int c(int value);
+        
+        int d(int value);
+    }
+    
+    public static class Filler {
+        public int e() {
+            return 0;
+        }
+        
+        public int f() {
+            return 0;
+        }
+        
+        public long g(long value) {
+            return value;
+        }
+        
+        public String h(String value) {
+            return value;
+        }
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+        
+        public int b() {
+            return 2;
+        }
+        
+        public int c(int value) {
+            return value + 3;
+        }
+        
+        public int d(int value) {
+            return value + 4;
+        }
+    }
+    //endregion
+    
+}
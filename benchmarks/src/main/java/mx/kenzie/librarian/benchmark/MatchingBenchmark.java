@@ -0,0 +1,73 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.Alias;
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a query method bound under an alias, with its arguments boxed and its
+ * result unboxed, against one bound to an exact match and a direct call.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    private Economy economy;
+    private Plugin plugin;
+    private int id;
+    private Integer boxed;
+    
+    @Setup
+    public void setup() {
+        final Library<Object> target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        this.plugin = new Plugin();
+        target.register(plugin);
+        this.economy = target.lookFor(Economy.class);
+        this.id = 7;
+        this.boxed = 7;
+    }
+    
+    @Benchmark
+    public double adapted() {
+        return economy.balance(id);
+    }
+    
+    @Benchmark
+    public Double exact() {
+        return economy.getMoney(boxed);
+    }
+    
+    @Benchmark
+    public Double direct() {
+        return plugin.getMoney(boxed);
+    }
+    
+    //region Stubs
+    public interface Economy {
+        @Alias("getMoney")
+        double balance(int id);
+        
+        Double getMoney(Integer id);
+    }
+    
+    public static class Plugin {
+        public Double getMoney(Integer id) {
+            return id * 2.0;
+        }
+    }
+    //endregion
+
+}
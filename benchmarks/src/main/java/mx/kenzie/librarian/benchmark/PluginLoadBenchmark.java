@@ -0,0 +1,120 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a plugin-load phase on a fresh library, which registers a few hundred
+ * resources and then binds a set of query interfaces, one at a time against in bulk.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginLoadBenchmark {
+    
+    private static final Class<?>[] QUERIES = {Economy.class, Permissions.class, Chat.class, Worlds.class};
+    
+    @Param({"200"})
+    public int resources;
+    
+    private List<Object> plugins;
+    
+    @Setup
+    public void setup() {
+        this.plugins = new ArrayList<>();
+        for (int i = 0; i < resources; i++) {
+            plugins.add(switch (i % 4) {
+                case 0 -> new Bank();
+                case 1 -> new Groups();
+                case 2 -> new Channels();
+                default -> new Filler();
+            });
+        }
+    }
+    
+    @Benchmark
+    public Object[] single() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        for (final Object plugin : plugins) library.register(plugin);
+        final Object[] endpoints = new Object[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) endpoints[i] = library.lookFor(QUERIES[i]);
+        return endpoints;
+    }
+    
+    @Benchmark
+    public Object[] bulk() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        library.registerAll(plugins);
+        return library.lookForAll(QUERIES);
+    }
+    
+    //region Stubs
+    public interface Economy {
+        double balance(int id);
+        
+        boolean has(int id, double amount);
+    }
+    
+    public interface Permissions {
+        boolean allowed(int id, String node);
+        
+        String group(int id);
+    }
+    
+    public interface Chat {
+        String prefix(int id);
+        
+        void send(int id, String message);
+    }
+    
+    public interface Worlds {
+        int count();
+    }
+    
+    public static class Bank {
+        public double balance(int id) {
+            return id;
+        }
+        
+        public boolean has(int id, double amount) {
+            return id >= amount;
+        }
+    }
+    
+    public static class Groups {
+        public boolean allowed(int id, String node) {
+            return true;
+        }
+        
+        public String group(int id) {
+            return "default";
+        }
+    }
+    
+    public static class Channels {
+        public String prefix(int id) {
+            return "";
+        }
+        
+        public void send(int id, String message) {
+        }
+    }
+    
+    public static class Filler {
+        public int count() {
+            return 1;
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,74 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of registering and unregistering a resource
+ * as the number of resources already held grows.
+ *
+ * A query is bound during setup, so each change also has to update
+ * the cached view of the resources for that type.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"10", "1000", "100000"})
+    public int resources;
+    
+    private Library<Object> target;
+    
+    @Setup
+    public void setup() {
+        this.target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        for (int i = 0; i < resources; i++) target.register(new Filler());
+        target.getAllResources(Filler.class);
+        target.lookFor(Query.class);
+    }
+    
+    @Benchmark
+    public boolean register() {
+        final Filler filler = new Filler();
+        target.register(filler);
+        return target.unregister(filler);
+    }
+    
+    @Benchmark
+    public boolean unregisterAll() {
+        target.register(new Provider());
+        return target.unregisterAll(Provider.class);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a();
+    }
+    
+    public static class Filler {
+        public int b() {
+            return 0;
+        }
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,95 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a plugin reload, where the economy provider is replaced and then called,
+ * for a caller that looks the query up again against one holding a live endpoint.
+ *
+ * The steady-state call measures what the live endpoint's indirection costs between
+ * reloads, against a normal endpoint.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReloadBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"lookup", "live"})
+    public String endpoint;
+    
+    private Library<Object> target;
+    private Economy provider;
+    private Economy economy;
+    private int id;
+    
+    @Setup
+    public void setup() {
+        this.target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        for (int i = 0; i < 20; i++) target.register(new Filler());
+        this.provider = new Bank();
+        this.target.register(provider);
+        this.economy = this.find();
+        this.id = 7;
+    }
+    
+    @Benchmark
+    public double reload() {
+        this.target.unregister(provider);
+        this.provider = new Bank();
+        this.target.register(provider);
+        if (endpoint.equals("lookup")) this.economy = this.find();
+        return economy.balance(id);
+    }
+    
+    @Benchmark
+    public double call() {
+        return economy.balance(id);
+    }
+    
+    private Economy find() {
+        return endpoint.equals("live") ? target.lookForLive(Economy.class) : target.lookFor(Economy.class);
+    }
+    
+    //region Stubs
+    public interface Economy {
+        double balance(int id);
+        
+        void deposit(int id, double amount);
+        
+        boolean has(int id, double amount);
+    }
+    
+    public static class Bank implements Economy {
+        public double balance(int id) {
+            return id * 10.0;
+        }
+        
+        public void deposit(int id, double amount) {
+        }
+        
+        public boolean has(int id, double amount) {
+            return this.balance(id) >= amount;
+        }
+    }
+    
+    public static class Filler {
+        public int size() {
+            return 0;
+        }
+    }
+    //endregion
+
+}
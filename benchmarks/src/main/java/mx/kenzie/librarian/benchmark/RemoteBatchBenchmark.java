@@ -0,0 +1,84 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.RemoteBatch;
+import mx.kenzie.librarian.RemoteLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of runs of remote calls made one at a time through an endpoint,
+ * against the same calls queued in a batch and sent as one request.
+ *
+ * The registry is in this JVM, so every request is a loopback round trip.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoteBatchBenchmark {
+    
+    @Param({"1", "16", "256"})
+    public int calls;
+    
+    private RemoteLibrary library;
+    private Query query;
+    private RemoteBatch batch;
+    
+    @Setup
+    public void setup() {
+        this.library = new RemoteLibrary();
+        this.library.register(new Adder());
+        this.query = library.lookFor(Query.class);
+        this.batch = library.batch();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        library.empty();
+    }
+    
+    @Benchmark
+    public long individual() {
+        long total = 0;
+        for (int i = 0; i < calls; i++) total += query.add(i);
+        return total;
+    }
+    
+    @Benchmark
+    public long batched() {
+        final CompletableFuture<?>[] futures = new CompletableFuture[calls];
+        for (int i = 0; i < calls; i++) {
+            final int value = i;
+            futures[i] = batch.submit(Query.class, query -> query.add(value));
+        }
+        batch.flush();
+        long total = 0;
+        for (final CompletableFuture<?> future : futures) total += (Integer) future.join();
+        return total;
+    }
+    
+    //region Stubs
+    public interface Query {
+        int add(int value);
+    }
+    
+    public interface AdderService extends Remote {
+        int add(int value) throws RemoteException;
+    }
+    
+    public static class Adder implements AdderService {
+        public int add(int value) {
+            return value + 1;
+        }
+    }
+    //endregion
+
+}
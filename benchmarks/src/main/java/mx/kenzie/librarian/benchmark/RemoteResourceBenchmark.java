@@ -0,0 +1,106 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.RemoteLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resource lookups and queries on a remote library with its bindings cached,
+ * or kept up to date by subscription, against a library that asks the registry every time.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoteResourceBenchmark {
+    
+    @Param({"cached", "subscribed", "uncached"})
+    public String cache;
+    
+    @Param({"10", "50"})
+    public int resources;
+    
+    private RemoteLibrary library;
+    
+    @Setup
+    public void setup() {
+        this.library = new RemoteLibrary();
+        if (cache.equals("uncached")) library.setCacheDuration(Duration.ZERO);
+        if (cache.equals("subscribed")) library.subscribe();
+        for (int i = 0; i < resources; i++) {
+            if (i % 2 == 0) library.register(new Common());
+            else library.register(new Filler());
+        }
+        library.register(new Rare());
+    }
+    
+    @TearDown
+    public void tearDown() {
+        library.unsubscribe();
+        library.empty();
+    }
+    
+    @Benchmark
+    public Object getResource() {
+        return library.getResource(RareService.class);
+    }
+    
+    @Benchmark
+    public Object[] getAllResources() {
+        return library.getAllResources(CommonService.class);
+    }
+    
+    @Benchmark
+    public Object lookFor() {
+        return library.lookFor(Query.class);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int common();
+        
+        int filler();
+        
+        int rare();
+    }
+    
+    public interface CommonService extends Remote {
+        int common() throws RemoteException;
+    }
+    
+    public interface FillerService extends Remote {
+        int filler() throws RemoteException;
+    }
+    
+    public interface RareService extends Remote {
+        int rare() throws RemoteException;
+    }
+    
+    public static class Common implements CommonService {
+        public int common() {
+            return 1;
+        }
+    }
+    
+    public static class Filler implements FillerService {
+        public int filler() {
+            return 2;
+        }
+    }
+    
+    public static class Rare implements RareService {
+        public int rare() {
+            return 3;
+        }
+    }
+    //endregion
+
+}
@@ -0,0 +1,70 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.SimpleLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding resources by type as the number of resources grows.
+ *
+ * Half the resources are of the requested type, and the single resource
+ * of the rarer type is registered last.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceBenchmark {
+    
+    @Param({"simple", "compiled"})
+    public String library;
+    
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int resources;
+    
+    private Library<Object> target;
+    
+    @Setup
+    public void setup() {
+        this.target = library.equals("compiled") ? new CompiledEndpointLibrary() : new SimpleLibrary();
+        for (int i = 0; i < resources; i++) {
+            if (i % 2 == 0) target.register(new Common());
+            else target.register(new Filler());
+        }
+        target.register(new Rare());
+    }
+    
+    @Benchmark
+    public Object getResource() {
+        return target.getResource(Rare.class);
+    }
+    
+    @Benchmark
+    public Object[] getAllResources() {
+        return target.getAllResources(Common.class);
+    }
+    
+    @Benchmark
+    public int resourceCount() {
+        return target.resourceCount();
+    }
+    
+    //region Stubs
+    public static class Common {
+    }
+    
+    public static class Filler {
+    }
+    
+    public static class Rare {
+    }
+    //endregion
+
+}
@@ -0,0 +1,107 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a plugin with a library of its own, which either registers every
+ * shared resource again alongside the plugin's own or is a child of a global library
+ * that already holds them, and then binds a query spanning both. Calls through the
+ * endpoint of each are measured too.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScopeBenchmark {
+    
+    @Param({"200"})
+    public int resources;
+    
+    private List<Object> shared;
+    private CompiledEndpointLibrary global;
+    private Plugin copied;
+    private Plugin scoped;
+    
+    @Setup
+    public void setup() {
+        this.shared = new ArrayList<>();
+        for (int i = 0; i < resources; i++) shared.add(i % 2 == 0 ? new Bank() : new Filler());
+        this.global = new CompiledEndpointLibrary();
+        global.registerAll(shared);
+        this.copied = this.copy().lookFor(Plugin.class);
+        this.scoped = this.child().lookFor(Plugin.class);
+    }
+    
+    private CompiledEndpointLibrary copy() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        library.registerAll(shared);
+        library.register(new Settings());
+        return library;
+    }
+    
+    private CompiledEndpointLibrary child() {
+        final CompiledEndpointLibrary library = global.createChild();
+        library.register(new Settings());
+        return library;
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Plugin loadCopied() {
+        return this.copy().lookFor(Plugin.class);
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Plugin loadChild() {
+        return this.child().lookFor(Plugin.class);
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double callCopied() {
+        return copied.balance(3) + copied.limit();
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double callChild() {
+        return scoped.balance(3) + scoped.limit();
+    }
+    
+    //region Stubs
+    public interface Plugin {
+        double balance(int id);
+        
+        int limit();
+    }
+    
+    public static class Bank {
+        public double balance(int id) {
+            return id;
+        }
+    }
+    
+    public static class Filler {
+        public int count() {
+            return 1;
+        }
+    }
+    
+    public static class Settings {
+        public int limit() {
+            return 10;
+        }
+    }
+    //endregion
+
+}
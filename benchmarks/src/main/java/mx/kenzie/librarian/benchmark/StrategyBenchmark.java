@@ -0,0 +1,66 @@
+package mx.kenzie.librarian.benchmark;
+
+import mx.kenzie.librarian.InvocationStrategy;
+import mx.kenzie.librarian.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-call cost of each invocation strategy against a direct call.
+ *
+ * @author Moderocky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrategyBenchmark {
+    
+    @Param({"REFLECTION", "METHOD_HANDLE", "COMPILED"})
+    public InvocationStrategy strategy;
+    
+    private Provider direct;
+    private Query query;
+    private int value;
+    
+    @Setup
+    public void setup() {
+        final Library<Object> library = Library.create(strategy);
+        this.direct = new Provider();
+        library.register(direct);
+        this.query = library.lookFor(Query.class);
+        this.value = 7;
+    }
+    
+    @Benchmark
+    public int direct() {
+        return direct.a() + direct.b(value);
+    }
+    
+    @Benchmark
+    public int endpoint() {
+        return query.a() + query.b(value);
+    }
+    
+    //region Stubs
+    public interface Query {
+        int a();
+        
+        int b(int value);
+    }
+    
+    public static class Provider {
+        public int a() {
+            return 1;
+        }
+        
+        public int b(int value) {
+            return value * 2;
+        }
+    }
+    //endregion
+    
+}
@@ -0,0 +1,297 @@
+package mx.kenzie.librarian.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the endpoint for each query interface marked {@code @LibraryQuery}
+ * at compile time, so the compiled endpoint library does not have to write and
+ * define a class when the query is first used.
+ *
+ * The generated class is named {@code <Query>$LibraryEndpoint} and sits in the
+ * package of the query. It lists the JVM signature of each method it implements,
+ * and takes a target and a method handle for each of them in that order.
+ * The library binds these at runtime, so the same class serves any resources.
+ * Default methods are implemented too, and call the query's own default when the
+ * library leaves their handle empty.
+ *
+ * @author Moderocky
+ */
+@SupportedAnnotationTypes(EndpointProcessor.ANNOTATION)
+public class EndpointProcessor extends AbstractProcessor {
+    
+    static final String ANNOTATION = "mx.kenzie.librarian.LibraryQuery";
+    static final String SUFFIX = "$LibraryEndpoint";
+    static final String INVOCATION_ERROR = "mx.kenzie.librarian.error.EndpointInvocationException";
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+        for (final TypeElement annotation : annotations) {
+            for (final Element element : environment.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.INTERFACE) {
+                    this.error(element, "Only interfaces can be library queries.");
+                } else if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                    this.error(element, "A library query cannot be private.");
+                } else {
+                    this.write((TypeElement) element);
+                }
+            }
+        }
+        return true;
+    }
+    
+    protected void write(TypeElement type) {
+        final Elements elements = processingEnv.getElementUtils();
+        final PackageElement owner = elements.getPackageOf(type);
+        final String namespace = owner.isUnnamed() ? "" : owner.getQualifiedName().toString();
+        final String binary = elements.getBinaryName(type).toString();
+        final String name = (namespace.isEmpty() ? binary : binary.substring(namespace.length() + 1)) + SUFFIX;
+        final String source = this.generate(type, namespace, name);
+        try (final Writer writer = processingEnv.getFiler()
+            .createSourceFile(namespace.isEmpty() ? name : namespace + "." + name, type)
+            .openWriter()) {
+            writer.write(source);
+        } catch (IOException ex) {
+            this.error(type, "Unable to write endpoint: " + ex.getMessage());
+        }
+    }
+    
+    protected String generate(TypeElement type, String namespace, String name) {
+        final List<ExecutableElement> methods = this.getMethods(type);
+        final String parameters = this.getTypeParameters(type.getTypeParameters());
+        final StringBuilder builder = new StringBuilder();
+        builder.append("// Generated by the Librarian endpoint processor. Do not edit.\n");
+        if (!namespace.isEmpty()) builder.append("package ").append(namespace).append(";\n\n");
+        builder.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        builder.append("final class ").append(name).append(parameters)
+            .append(" implements ").append(type.getQualifiedName()).append(this.getTypeArguments(type)).append(" {\n\n");
+        builder.append("    static final String[] SIGNATURES = {");
+        for (int i = 0; i < methods.size(); i++) {
+            if (i > 0) builder.append(", ");
+            final ExecutableElement method = methods.get(i);
+            builder.append('"').append(method.getSimpleName()).append(this.getDescriptor(method)).append('"');
+        }
+        builder.append("};\n\n");
+        for (int i = 0; i < methods.size(); i++) {
+            builder.append("    private final Object target").append(i).append(";\n");
+            builder.append("    private final java.lang.invoke.MethodHandle handle").append(i).append(";\n");
+        }
+        builder.append("\n    ").append(name).append("(Object[] targets, java.lang.invoke.MethodHandle[] handles) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            builder.append("        this.target").append(i).append(" = targets[").append(i).append("];\n");
+            builder.append("        this.handle").append(i).append(" = handles[").append(i).append("];\n");
+        }
+        builder.append("    }\n");
+        for (int i = 0; i < methods.size(); i++) {
+            builder.append('\n');
+            this.generateMethod(builder, (DeclaredType) type.asType(), methods.get(i), i);
+        }
+        builder.append("\n}\n");
+        return builder.toString();
+    }
+    
+    protected void generateMethod(StringBuilder builder, DeclaredType owner, ExecutableElement method, int index) {
+        final Types types = processingEnv.getTypeUtils();
+        final ExecutableType member = (ExecutableType) types.asMemberOf(owner, method);
+        final List<? extends TypeMirror> parameters = member.getParameterTypes();
+        final TypeMirror result = member.getReturnType();
+        final TypeMirror erased = types.erasure(method.getReturnType());
+        builder.append("    @Override\n    public ");
+        if (!member.getTypeVariables().isEmpty()) {
+            final List<String> variables = new ArrayList<>();
+            for (final TypeVariable variable : member.getTypeVariables()) {
+                variables.add(this.getTypeParameter(variable.toString(), List.of(variable.getUpperBound())));
+            }
+            builder.append('<').append(String.join(", ", variables)).append("> ");
+        }
+        builder.append(result).append(' ').append(method.getSimpleName()).append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) builder.append(", ");
+            final String parameter = parameters.get(i).toString();
+            if (method.isVarArgs() && i == parameters.size() - 1 && parameter.endsWith("[]"))
+                builder.append(parameter, 0, parameter.length() - 2).append("...");
+            else builder.append(parameter);
+            builder.append(" arg").append(i);
+        }
+        builder.append(")");
+        if (!member.getThrownTypes().isEmpty()) {
+            final List<String> thrown = new ArrayList<>();
+            for (final TypeMirror type : member.getThrownTypes()) thrown.add(type.toString());
+            builder.append(" throws ").append(String.join(", ", thrown));
+        }
+        builder.append(" {\n");
+        if (method.getModifiers().contains(Modifier.DEFAULT)) {
+            final List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < parameters.size(); i++) arguments.add("arg" + i);
+            final String call = owner.asElement() + ".super." + method.getSimpleName() + "(" + String.join(", ", arguments) + ")";
+            builder.append("        if (handle").append(index).append(" == null) ");
+            if (result.getKind() == TypeKind.VOID) builder.append("{\n            ").append(call).append(";\n            return;\n        }\n");
+            else builder.append("return ").append(call).append(";\n");
+        }
+        builder.append("        try {\n            ");
+        if (result.getKind() != TypeKind.VOID) {
+            builder.append("return ");
+            if (!types.isSameType(result, erased)) builder.append('(').append(result).append(") ");
+            builder.append('(').append(erased).append(") ");
+        }
+        builder.append("handle").append(index).append(".invokeExact(target").append(index);
+        for (int i = 0; i < parameters.size(); i++) {
+            final TypeMirror declared = types.erasure(method.getParameters().get(i).asType());
+            builder.append(", ");
+            if (!types.isSameType(types.erasure(parameters.get(i)), declared))
+                builder.append('(').append(declared).append(") ");
+            builder.append("arg").append(i);
+        }
+        builder.append(");\n");
+        builder.append("        } catch (RuntimeException | Error ex) {\n            throw ex;\n");
+        final List<TypeMirror> checked = this.getCheckedExceptions(member.getThrownTypes());
+        boolean complete = false;
+        if (!checked.isEmpty()) {
+            final List<String> names = new ArrayList<>();
+            for (final TypeMirror type : checked) {
+                names.add(types.erasure(type).toString());
+                complete |= types.isSameType(type, this.getType("java.lang.Throwable"));
+            }
+            builder.append("        } catch (").append(String.join(" | ", names)).append(" ex) {\n            throw ex;\n");
+        }
+        if (!complete) builder.append("        } catch (Throwable ex) {\n            throw new ")
+            .append(INVOCATION_ERROR).append("(ex);\n");
+        builder.append("        }\n    }\n");
+    }
+    
+    /**
+     * Finds the abstract and default methods the endpoint implements, including those
+     * inherited from super-interfaces, with one method per JVM signature.
+     */
+    protected List<ExecutableElement> getMethods(TypeElement type) {
+        final Elements elements = processingEnv.getElementUtils();
+        final Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            final Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.ABSTRACT) && !modifiers.contains(Modifier.DEFAULT)) continue;
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE) continue;
+            methods.putIfAbsent(method.getSimpleName() + this.getDescriptor(method), method);
+        }
+        return new ArrayList<>(methods.values());
+    }
+    
+    /**
+     * Reduces the declared exceptions to the checked ones that are not already
+     * covered by another, so they can share a single multi-catch.
+     */
+    protected List<TypeMirror> getCheckedExceptions(List<? extends TypeMirror> thrown) {
+        final Types types = processingEnv.getTypeUtils();
+        final TypeMirror runtime = this.getType("java.lang.RuntimeException"), error = this.getType("java.lang.Error");
+        final List<TypeMirror> checked = new ArrayList<>();
+        for (int i = 0; i < thrown.size(); i++) {
+            final TypeMirror type = thrown.get(i);
+            if (types.isSubtype(type, runtime) || types.isSubtype(type, error)) continue;
+            boolean covered = false;
+            for (int j = 0; j < thrown.size(); j++) {
+                final TypeMirror other = thrown.get(j);
+                if (i == j || !types.isSubtype(type, other)) continue;
+                if (!types.isSameType(type, other) || j < i) covered = true;
+            }
+            if (!covered) checked.add(type);
+        }
+        return checked;
+    }
+    
+    protected String getTypeParameters(List<? extends TypeParameterElement> parameters) {
+        if (parameters.isEmpty()) return "";
+        final List<String> list = new ArrayList<>();
+        for (final TypeParameterElement parameter : parameters) {
+            list.add(this.getTypeParameter(parameter.getSimpleName().toString(), parameter.getBounds()));
+        }
+        return "<" + String.join(", ", list) + ">";
+    }
+    
+    protected String getTypeParameter(String name, List<? extends TypeMirror> bounds) {
+        final List<String> list = new ArrayList<>();
+        for (final TypeMirror bound : bounds) {
+            if (bound.toString().equals("java.lang.Object")) continue;
+            list.add(bound.toString());
+        }
+        if (list.isEmpty()) return name;
+        return name + " extends " + String.join(" & ", list);
+    }
+    
+    protected String getTypeArguments(TypeElement type) {
+        if (type.getTypeParameters().isEmpty()) return "";
+        final List<String> list = new ArrayList<>();
+        for (final TypeParameterElement parameter : type.getTypeParameters()) {
+            list.add(parameter.getSimpleName().toString());
+        }
+        return "<" + String.join(", ", list) + ">";
+    }
+    
+    protected TypeMirror getType(String name) {
+        return processingEnv.getElementUtils().getTypeElement(name).asType();
+    }
+    
+    //region Descriptors
+    protected String getDescriptor(ExecutableElement method) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (final Element parameter : method.getParameters()) {
+            builder.append(this.getDescriptor(parameter.asType()));
+        }
+        return builder.append(')').append(this.getDescriptor(method.getReturnType())).toString();
+    }
+    
+    protected String getDescriptor(TypeMirror type) {
+        final TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        return switch (erased.getKind()) {
+            case BOOLEAN -> "Z";
+            case BYTE -> "B";
+            case SHORT -> "S";
+            case CHAR -> "C";
+            case INT -> "I";
+            case LONG -> "J";
+            case FLOAT -> "F";
+            case DOUBLE -> "D";
+            case VOID -> "V";
+            case ARRAY -> "[" + this.getDescriptor(((ArrayType) erased).getComponentType());
+            case DECLARED -> "L" + processingEnv.getElementUtils()
+                .getBinaryName((TypeElement) ((DeclaredType) erased).asElement())
+                .toString().replace('.', '/') + ";";
+            default -> throw new IllegalArgumentException("Unsupported type in query: " + type);
+        };
+    }
+    //endregion
+    
+    protected void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,168 @@
+package mx.kenzie.librarian.processor.test;
+
+import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.EndpointCounter;
+import mx.kenzie.librarian.RecordingMetrics;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+import mx.kenzie.librarian.processor.EndpointProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class EndpointProcessorTest {
+    
+    @Test
+    public void generated() throws Throwable {
+        final ClassLoader loader = this.compile();
+        final Class<?> shop = loader.loadClass("sample.Shop");
+        assert loader.loadClass("sample.Shop$LibraryEndpoint") != null;
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        library.register(loader.loadClass("sample.Store").getConstructor().newInstance());
+        final Object endpoint = library.lookFor(shop);
+        assert endpoint.getClass().getName().equals("sample.Shop$LibraryEndpoint");
+        assert (int) shop.getMethod("price", int.class).invoke(endpoint, 4) == 8;
+        assert (long) shop.getMethod("total", int.class, int.class).invoke(endpoint, 2, 3) == 5L;
+        assert shop.getMethod("find", String.class).invoke(endpoint, "bob").equals("BOB");
+        assert (int) shop.getMethod("discount").invoke(endpoint) == 10;
+        assert (int) shop.getMethod("rating").invoke(endpoint) == 3;
+        try {
+            shop.getMethod("restock").invoke(endpoint);
+            assert false;
+        } catch (java.lang.reflect.InvocationTargetException ex) {
+            assert ex.getCause() instanceof IOException;
+        }
+        try {
+            shop.getMethod("missing").invoke(endpoint);
+            assert false;
+        } catch (java.lang.reflect.InvocationTargetException ex) {
+            assert ex.getCause() instanceof UnmatchedEndpointException;
+        }
+        final Object live = library.lookForLive(shop);
+        assert live.getClass().getName().equals("sample.Shop$LibraryEndpoint");
+        assert (int) shop.getMethod("price", int.class).invoke(live, 4) == 8;
+        assert (int) shop.getMethod("rating").invoke(live) == 3;
+        assert library.empty() == 1;
+        assert (int) shop.getMethod("discount").invoke(live) == 0;
+        try {
+            shop.getMethod("price", int.class).invoke(live, 4);
+            assert false;
+        } catch (java.lang.reflect.InvocationTargetException ex) {
+            assert ex.getCause() instanceof UnmatchedEndpointException;
+        }
+    }
+    
+    @Test
+    public void metrics() throws Throwable {
+        final ClassLoader loader = this.compile();
+        final Class<?> shop = loader.loadClass("sample.Shop");
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary(metrics);
+        library.register(loader.loadClass("sample.Store").getConstructor().newInstance());
+        final Object[] endpoints = {library.lookFor(shop), library.lookForLive(shop)};
+        for (final Object endpoint : endpoints) {
+            assert endpoint.getClass().getName().equals("sample.Shop$LibraryEndpoint");
+            assert (int) shop.getMethod("price", int.class).invoke(endpoint, 4) == 8;
+            try {
+                shop.getMethod("restock").invoke(endpoint);
+                assert false;
+            } catch (java.lang.reflect.InvocationTargetException ex) {
+                assert ex.getCause() instanceof IOException;
+            }
+        }
+        final EndpointCounter price = metrics.getCounter(shop.getMethod("price", int.class));
+        assert price.getCalls() == 2;
+        assert price.getFailures() == 0;
+        final EndpointCounter restock = metrics.getCounter(shop.getMethod("restock"));
+        assert restock.getCalls() == 2;
+        assert restock.getFailures() == 2;
+        try {
+            shop.getMethod("missing").invoke(endpoints[0]);
+            assert false;
+        } catch (java.lang.reflect.InvocationTargetException ex) {
+            assert ex.getCause() instanceof UnmatchedEndpointException;
+        }
+        assert metrics.getCounter(shop.getMethod("missing")).getFailures() == 1;
+    }
+    
+    protected ClassLoader compile() throws IOException {
+        final Path root = Files.createTempDirectory("librarian");
+        final Path sources = Files.createDirectories(root.resolve("sample"));
+        final Path classes = Files.createDirectories(root.resolve("classes"));
+        Files.writeString(sources.resolve("Finder.java"), """
+            package sample;
+            
+            public interface Finder<Type> {
+                Type find(String name);
+            }
+            """);
+        Files.writeString(sources.resolve("Shop.java"), """
+            package sample;
+            
+            import mx.kenzie.librarian.LibraryQuery;
+            
+            @LibraryQuery
+            public interface Shop extends Finder<String> {
+                int price(int amount);
+                
+                long total(int a, int b);
+                
+                void restock() throws java.io.IOException;
+                
+                String missing();
+                
+                default int discount() {
+                    return 0;
+                }
+                
+                default int rating() {
+                    return 3;
+                }
+            }
+            """);
+        Files.writeString(sources.resolve("Store.java"), """
+            package sample;
+            
+            public class Store {
+                public int price(int amount) {
+                    return amount * 2;
+                }
+                
+                public int total(int a, int b) {
+                    return a + b;
+                }
+                
+                public void restock() throws java.io.IOException {
+                    throw new java.io.IOException("Closed.");
+                }
+                
+                public String find(String name) {
+                    return name.toUpperCase();
+                }
+                
+                public int discount() {
+                    return 10;
+                }
+            }
+            """);
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (final StandardJavaFileManager manager = compiler.getStandardFileManager(null, null, null)) {
+            final Iterable<? extends JavaFileObject> units = manager.getJavaFileObjects(
+                sources.resolve("Finder.java"), sources.resolve("Shop.java"), sources.resolve("Store.java"));
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, manager, null,
+                List.of("-d", classes.toString(), "-classpath", System.getProperty("java.class.path")), null, units);
+            task.setProcessors(List.of(new EndpointProcessor()));
+            assert task.call();
+        }
+        return new URLClassLoader(new URL[]{classes.toUri().toURL()}, this.getClass().getClassLoader());
+    }
+
+}
@@ -1,65 +1,350 @@
 package mx.kenzie.librarian;
 
-import sun.misc.Unsafe;
+import mx.kenzie.librarian.error.EndpointLoaderException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedExceptionAction;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 class AccessUtility {
     
-    static Unsafe UNSAFE;
-    private static long offset;
+    private static final ClassValue<Method[]> METHODS = new ClassValue<>() {
+        @Override
+        protected Method[] computeValue(Class<?> type) {
+            final List<Method> methods = new ArrayList<>();
+            final Set<String> signatures = new HashSet<>();
+            final List<Class<?>> interfaces = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (final Method method : current.getDeclaredMethods()) {
+                    if (signatures.add(method.getName() + getDescriptor(method))) methods.add(method);
+                }
+                interfaces.addAll(List.of(current.getInterfaces()));
+            }
+            // Default methods the classes do not override, nearest interfaces first.
+            for (int i = 0; i < interfaces.size(); i++) {
+                for (final Method method : interfaces.get(i).getDeclaredMethods()) {
+                    if (!method.isDefault()) continue;
+                    if (signatures.add(method.getName() + getDescriptor(method))) methods.add(method);
+                }
+                interfaces.addAll(List.of(interfaces.get(i).getInterfaces()));
+            }
+            return methods.toArray(new Method[0]);
+        }
+    };
+    
+    private static final ClassValue<QueryMethods> QUERIES = new ClassValue<>() {
+        @Override
+        protected QueryMethods computeValue(Class<?> type) {
+            final Map<String, List<Method>> groups = new LinkedHashMap<>();
+            for (final Method method : type.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.isSynthetic()) continue;
+                groups.computeIfAbsent(method.getName() + Arrays.toString(method.getParameterTypes()), key -> new ArrayList<>()).add(method);
+            }
+            final List<Method> methods = new ArrayList<>(), bridges = new ArrayList<>();
+            final Map<Method, Class<?>[]> resolved = new HashMap<>();
+            for (final List<Method> group : groups.values()) {
+                Method primary = group.get(0);
+                for (final Method method : group) {
+                    if (primary.getReturnType().isAssignableFrom(method.getReturnType())) primary = method;
+                }
+                methods.add(primary);
+                final Set<Class<?>> returns = new HashSet<>(List.of(primary.getReturnType()));
+                for (final Method method : group) {
+                    if (returns.add(method.getReturnType())) bridges.add(method);
+                }
+                final Class<?>[] types = resolve(type, primary);
+                if (types != null) resolved.put(primary, types);
+            }
+            return new QueryMethods(methods.toArray(new Method[0]), bridges.toArray(new Method[0]), resolved);
+        }
+    };
+    
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle NANO_TIME, RECORD, RECORD_RESULT, FAIL;
     
     static {
         try {
-            UNSAFE = AccessController.doPrivileged((PrivilegedExceptionAction<Unsafe>) () -> {
-                final Field field = Unsafe.class.getDeclaredField("theUnsafe");
-                field.setAccessible(true);
-                return (Unsafe) field.get(null);
-            });
-            final Field field = Class.class.getDeclaredField("module");
-            offset = UNSAFE.objectFieldOffset(field);
-            UNSAFE.putObject(AccessUtility.class, offset, Object.class.getModule());
-        } catch (Throwable ex) {
-            ex.printStackTrace();
-            UNSAFE = null;
+            NANO_TIME = LOOKUP.findStatic(System.class, "nanoTime", MethodType.methodType(long.class));
+            RECORD = LOOKUP.findStatic(AccessUtility.class, "record", MethodType.methodType(void.class, EndpointCounter.class, Throwable.class, long.class));
+            RECORD_RESULT = LOOKUP.findStatic(AccessUtility.class, "record", MethodType.methodType(Object.class, EndpointCounter.class, Throwable.class, Object.class, long.class));
+            FAIL = LOOKUP.findVirtual(EndpointCounter.class, "fail", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
         }
     }
     
-    static Method getMatchingMethod(Object object, Method method) {
-        Method match = null;
-        for (Method m : object.getClass().getDeclaredMethods()) {
-            if (m.getName().equals(method.getName())
-                && Arrays.equals(m.getParameterTypes(), method.getParameterTypes())
-                && method.getReturnType().isAssignableFrom(m.getReturnType())
-            ) return m;
+    static Method[] getMethods(final Class<?> type) {
+        return METHODS.get(type);
+    }
+    
+    /**
+     * Gets the methods an endpoint for the query interface must implement, including those
+     * inherited from its super-interfaces. Static methods are not included.
+     *
+     * A method inherited more than once with the same name and erased parameters is only
+     * included once, as the declaration with the most specific return type. Any others
+     * with a different return type are bridges, which call through to that declaration.
+     */
+    static Method[] getQueryMethods(final Class<?> type) {
+        return QUERIES.get(type).methods().clone();
+    }
+    
+    static Method[] getBridges(final Class<?> type) {
+        return QUERIES.get(type).bridges().clone();
+    }
+    
+    /**
+     * Whether the query's methods need neither bridges nor generic types resolving,
+     * so an endpoint may implement them alongside those of other queries.
+     */
+    static boolean isPlain(final Class<?> type) {
+        final QueryMethods methods = QUERIES.get(type);
+        return methods.bridges().length == 0 && methods.resolved().isEmpty();
+    }
+    
+    /**
+     * Gets the return type of a method of the query, with any type variable of a generic
+     * super-interface replaced by the type the query gives it.
+     */
+    static Class<?> getReturnType(final Class<?> query, final Method method) {
+        final Class<?>[] types = QUERIES.get(query).resolved().get(method);
+        return types != null ? types[0] : method.getReturnType();
+    }
+    
+    /**
+     * Gets the parameter types of a method of the query, resolved as its return type is.
+     */
+    static Class<?>[] getParameterTypes(final Class<?> query, final Method method) {
+        final Class<?>[] types = QUERIES.get(query).resolved().get(method);
+        return types != null ? Arrays.copyOfRange(types, 1, types.length) : method.getParameterTypes();
+    }
+    
+    /**
+     * Resolves the return type and parameters of a method inherited from a generic super-interface,
+     * or returns null if they are the same as the method's erased types.
+     */
+    private static Class<?>[] resolve(final Class<?> query, final Method method) {
+        if (method.getDeclaringClass() == query || method.getDeclaringClass().getTypeParameters().length == 0) return null;
+        final Type[] parameters = method.getGenericParameterTypes();
+        final Class<?>[] types = new Class<?>[parameters.length + 1];
+        types[0] = resolve(query, method.getGenericReturnType());
+        for (int i = 0; i < parameters.length; i++) types[i + 1] = resolve(query, parameters[i]);
+        if (types[0] != method.getReturnType()) return types;
+        return Arrays.equals(types, 1, types.length, method.getParameterTypes(), 0, parameters.length) ? null : types;
+    }
+    
+    /**
+     * Erases a type as seen from the query, so a type variable the query's super-interfaces
+     * give a value to becomes that value's erasure rather than its bound's.
+     */
+    static Class<?> resolve(final Class<?> query, final Type type) {
+        if (type instanceof TypeVariable<?> variable) {
+            final Type value = getArgument(query, variable);
+            return value != null ? resolve(query, value) : erase(type);
         }
-        if (object.getClass().getSuperclass() == Object.class) return match;
-        return getMatchingMethod(object.getClass().getSuperclass(), method);
+        if (type instanceof GenericArrayType array) return resolve(query, array.getGenericComponentType()).arrayType();
+        return erase(type);
     }
     
-    static Method getMatchingMethod(Object object, Class<?> type, String name, Class<?>... params) {
-        Method match = null;
-        for (Method m : object.getClass().getDeclaredMethods()) {
-            if (m.getName().equals(name)
-                && Arrays.equals(m.getParameterTypes(), params)
-                && type.isAssignableFrom(m.getReturnType())
-            ) return m;
+    private static Type getArgument(final Class<?> type, final TypeVariable<?> variable) {
+        for (final Type parent : type.getGenericInterfaces()) {
+            final Class<?> raw = erase(parent);
+            if (raw == variable.getGenericDeclaration() && parent instanceof ParameterizedType generic) {
+                final TypeVariable<?>[] variables = raw.getTypeParameters();
+                for (int i = 0; i < variables.length; i++) {
+                    if (variables[i].equals(variable)) return generic.getActualTypeArguments()[i];
+                }
+            }
+            final Type value = getArgument(raw, variable);
+            if (value != null) return value;
         }
-        if (object.getClass().getSuperclass() == Object.class) return match;
-        return getMatchingMethod(object.getClass().getSuperclass(), type, name, params);
+        return null;
+    }
+    
+    static Class<?> erase(final Type type) {
+        if (type instanceof Class<?> value) return value;
+        if (type instanceof ParameterizedType value) return erase(value.getRawType());
+        if (type instanceof GenericArrayType value) return erase(value.getGenericComponentType()).arrayType();
+        if (type instanceof WildcardType value) return erase(value.getUpperBounds()[0]);
+        if (type instanceof TypeVariable<?> value) return erase(value.getBounds()[0]);
+        return Object.class;
     }
     
     static void access(final AccessibleObject object) {
-        object.setAccessible(true);
+        object.trySetAccessible();
+    }
+    
+    static MethodHandle unreflect(final Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.privateLookupIn(method.getDeclaringClass(), LOOKUP).unreflect(method);
+        } catch (IllegalAccessException ex) {
+            return LOOKUP.unreflect(method);
+        }
+    }
+    
+    /**
+     * Creates a handle that calls the interface's own implementation of a default method,
+     * taking the object and an array of arguments. Unlike
+     * {@link java.lang.reflect.InvocationHandler#invokeDefault}, this does not need
+     * the interface to be accessible from here.
+     */
+    static MethodHandle getDefault(final Method method) throws IllegalAccessException, NoSuchMethodException {
+        return getSpecial(method)
+            .asSpreader(Object[].class, method.getParameterCount())
+            .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+    }
+    
+    /**
+     * Creates a handle that calls the interface's own implementation of a default method,
+     * taking the object followed by the method's parameters.
+     */
+    static MethodHandle getSpecial(final Method method) throws IllegalAccessException, NoSuchMethodException {
+        final Class<?> owner = method.getDeclaringClass();
+        return MethodHandles.privateLookupIn(owner, LOOKUP)
+            .findSpecial(owner, method.getName(), MethodType.methodType(method.getReturnType(), method.getParameterTypes()), owner);
     }
     
-    static void moveModule(Class<?> from, Class<?> to) {
-        UNSAFE.putObject(from, offset, to.getModule());
+    /**
+     * Creates a handle that takes any leading parameters followed by those of the
+     * query method, and throws because the query method has no match.
+     */
+    static MethodHandle unmatched(final Method method, final Class<?>... leading) {
+        final Class<?>[] parameters = new Class<?>[method.getParameterCount() + leading.length];
+        System.arraycopy(leading, 0, parameters, 0, leading.length);
+        System.arraycopy(method.getParameterTypes(), 0, parameters, leading.length, method.getParameterCount());
+        try {
+            final MethodHandle error = LOOKUP
+                .findConstructor(UnmatchedEndpointException.class, MethodType.methodType(void.class, String.class))
+                .bindTo("Unmatched library method: '" + method.getName() + "'");
+            final MethodHandle thrower = MethodHandles.throwException(method.getReturnType(), UnmatchedEndpointException.class);
+            return MethodHandles.dropArguments(MethodHandles.collectArguments(thrower, 0, error), 0, parameters);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new EndpointLoaderException(ex);
+        }
+    }
+    
+    /**
+     * Wraps a handle so that every call is counted and timed by the counter,
+     * and counted as a failure if it throws.
+     */
+    static MethodHandle timed(final MethodHandle handle, final EndpointCounter counter) {
+        final Class<?> result = handle.type().returnType();
+        final MethodHandle cleanup = result == void.class
+            ? RECORD.bindTo(counter)
+            : RECORD_RESULT.bindTo(counter).asType(MethodType.methodType(result, Throwable.class, result, long.class));
+        final MethodHandle body = MethodHandles.tryFinally(MethodHandles.dropArguments(handle, 0, long.class), cleanup);
+        return MethodHandles.foldArguments(body, NANO_TIME);
+    }
+    
+    /**
+     * Wraps a handle so that every call is counted as a failure by the counter, without being timed.
+     */
+    static MethodHandle failing(final MethodHandle handle, final EndpointCounter counter) {
+        return MethodHandles.foldArguments(handle, FAIL.bindTo(counter));
+    }
+    
+    private static void record(EndpointCounter counter, Throwable error, long start) {
+        counter.record(System.nanoTime() - start);
+        if (error != null) counter.fail();
+    }
+    
+    private static Object record(EndpointCounter counter, Throwable error, Object result, long start) {
+        record(counter, error, start);
+        return result;
+    }
+    
+    /**
+     * Scores the conversions needed to pass calls with these parameters and return type on to the target,
+     * as described by {@link MethodMatcher#STRUCTURAL}.
+     */
+    static int getCost(final Class<?> returnType, final Class<?>[] parameters, final Method target) {
+        if (parameters.length != target.getParameterCount()) return MethodMatcher.NO_MATCH;
+        final Class<?>[] targets = target.getParameterTypes();
+        int cost = 0;
+        for (int i = 0; i < parameters.length; i++) {
+            final int step = getCost(parameters[i], targets[i]);
+            if (step < 0) return MethodMatcher.NO_MATCH;
+            cost += step;
+        }
+        if (returnType == void.class) return target.getReturnType() == void.class ? cost : cost + 1;
+        final int step = getCost(target.getReturnType(), returnType);
+        return step < 0 ? MethodMatcher.NO_MATCH : cost + step;
+    }
+    
+    /**
+     * Scores the conversion of a value from one type to another, or returns -1 if there is none.
+     */
+    static int getCost(final Class<?> from, final Class<?> to) {
+        if (from == to) return 0;
+        if (from == void.class || to == void.class) return -1;
+        if (from.isPrimitive() == to.isPrimitive()) return isAdaptable(from, to) ? 1 : -1;
+        if (from.isPrimitive()) return to.isAssignableFrom(wrap(from)) ? 2 : -1;
+        final Class<?> primitive = unwrap(from);
+        return primitive != null && (primitive == to || isAdaptable(primitive, to)) ? 3 : -1;
+    }
+    
+    static Class<?> wrap(final Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+    
+    /**
+     * Gets the primitive type a wrapper holds, or null if the type is not a wrapper.
+     */
+    static Class<?> unwrap(final Class<?> type) {
+        final Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        return primitive != type && primitive != void.class ? primitive : null;
+    }
+    
+    static boolean isAdaptable(final Class<?> from, final Class<?> to) {
+        if (from == to) return true;
+        if (from.isPrimitive() != to.isPrimitive()) return false;
+        if (!from.isPrimitive()) return to.isAssignableFrom(from);
+        if (from == void.class || from == boolean.class || to == void.class || to == boolean.class) return false;
+        if (to == byte.class || to == char.class) return false;
+        if (from == char.class) return to != short.class;
+        return getRank(from) < getRank(to);
     }
     
+    private static int getRank(final Class<?> type) {
+        if (type == byte.class) return 0;
+        if (type == short.class) return 1;
+        if (type == int.class) return 2;
+        if (type == long.class) return 3;
+        if (type == float.class) return 4;
+        if (type == double.class) return 5;
+        return -1;
+    }
+    
+    static String getDescriptor(final Method method) {
+        final StringBuilder builder = new StringBuilder("(");
+        for (final Class<?> type : method.getParameterTypes()) {
+            builder.append(type.descriptorString());
+        }
+        return builder.append(")").append(method.getReturnType().descriptorString()).toString();
+    }
+    
+    /**
+     * The query methods of an interface, its bridges, and the resolved types, return type first,
+     * of any method whose generic types the interface gives values to.
+     */
+    private record QueryMethods(Method[] methods, Method[] bridges, Map<Method, Class<?>[]> resolved) {
+    }
+
 }
@@ -0,0 +1,27 @@
+package mx.kenzie.librarian;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives a query method other names that a matching resource method may have,
+ * such as when resources from different sources name the same thing differently.
+ *
+ * The query method's own name is always tried first, and then each alias in order.
+ * With the default {@link MethodMatcher}, each alias further down the list counts
+ * as one more conversion when matches from different resources are ranked.
+ *
+ * @author Moderocky
+ * @see MethodMatcher#getNames(java.lang.reflect.Method)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Alias {
+    
+    String[] value();
+
+}
@@ -0,0 +1,217 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.EndpointLoaderException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the resource calls behind asynchronous query methods, which return a future
+ * of what the resource method returns.
+ *
+ * Calls are made on the library's executor, which by default uses a virtual thread for
+ * each call where the runtime has them, and otherwise a cached pool of daemon threads.
+ * Each resource has a limit on how many of its calls may run at once. Calls past the
+ * limit wait in a queue, without holding a thread, until one of the running calls ends.
+ *
+ * @author Moderocky
+ */
+class AsyncDispatcher {
+    
+    static final int DEFAULT_LIMIT = 8;
+    private static final MethodHandle SUBMIT;
+    
+    static {
+        try {
+            SUBMIT = MethodHandles.lookup().findVirtual(AsyncDispatcher.class, "submit",
+                MethodType.methodType(CompletableFuture.class, MethodHandle.class, Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    protected final Map<Object, Gate> gates = Collections.synchronizedMap(new WeakHashMap<>());
+    protected volatile Executor executor;
+    protected volatile int limit = DEFAULT_LIMIT;
+    
+    Executor getExecutor() {
+        final Executor executor = this.executor;
+        return executor != null ? executor : Default.EXECUTOR;
+    }
+    
+    /**
+     * Gets the type of result a query method's future completes with,
+     * or null if the query method is not asynchronous.
+     */
+    static Class<?> getResult(Method method) {
+        return getResult(method.getDeclaringClass(), method);
+    }
+    
+    /**
+     * Gets the type of result as seen from the query, which may give a value to a type variable.
+     */
+    static Class<?> getResult(Class<?> query, Method method) {
+        final Class<?> type = method.getReturnType();
+        if (type == Object.class || !type.isAssignableFrom(CompletableFuture.class)) return null;
+        if (!(method.getGenericReturnType() instanceof ParameterizedType generic)) return Object.class;
+        return AccessUtility.resolve(query, generic.getActualTypeArguments()[0]);
+    }
+    
+    /**
+     * Finds the first resource method an asynchronous query method can run,
+     * one whose result, once boxed, can complete the query's future.
+     */
+    static Endpoint find(SignatureIndex index, MethodMatcher matcher, Class<?> query, Method method) {
+        final Class<?> result = getResult(query, method);
+        if (result == null) return null;
+        final Class<?>[] parameters = AccessUtility.getParameterTypes(query, method);
+        for (final Endpoint endpoint : index.findAll(matcher, matcher.getNames(method), void.class, parameters)) {
+            final Class<?> type = endpoint.method().getReturnType();
+            if (result.isAssignableFrom(type == void.class ? Void.class : AccessUtility.wrap(type)))
+                return endpoint;
+        }
+        return null;
+    }
+    
+    /**
+     * Whether the query method is bound asynchronously to this resource method,
+     * rather than to one that already returns a future.
+     */
+    static boolean isAsync(Method method, Method match) {
+        return getResult(method) != null && !method.getReturnType().isAssignableFrom(match.getReturnType());
+    }
+    
+    /**
+     * Creates a handle for a proxy endpoint that takes the query's arguments
+     * as an array and runs the resource method.
+     */
+    MethodHandle createSpreader(Method method, Endpoint endpoint) {
+        return MethodHandles.insertArguments(SUBMIT, 0, this, createTarget(method, endpoint.method()), endpoint.resource())
+            .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+    
+    /**
+     * Creates a handle for a compiled endpoint that takes the resource as an object,
+     * followed by the query method's parameters, and runs the resource method.
+     */
+    MethodHandle createHandle(Method method, Method match) {
+        final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+        parameters[0] = Object.class;
+        System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+        return MethodHandles.insertArguments(SUBMIT, 0, this, createTarget(method, match))
+            .asCollector(1, Object[].class, method.getParameterCount())
+            .asType(MethodType.methodType(method.getReturnType(), parameters));
+    }
+    
+    /**
+     * Creates a handle calling the resource method, which takes the resource and an array of the arguments.
+     */
+    private static MethodHandle createTarget(Method method, Method match) {
+        final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+        parameters[0] = Object.class;
+        System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+        try {
+            MethodHandle handle = AccessUtility.unreflect(match);
+            if (Modifier.isStatic(match.getModifiers())) handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            return handle
+                .asType(MethodType.methodType(Object.class, parameters))
+                .asSpreader(Object[].class, method.getParameterCount());
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access resource method '" + match.getName() + "'.", ex);
+        }
+    }
+    
+    protected CompletableFuture<Object> submit(MethodHandle target, Object resource, Object[] arguments) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final Runnable task = () -> {
+            try {
+                future.complete((Object) target.invokeExact(resource, arguments));
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+        this.gates.computeIfAbsent(resource, key -> new Gate()).submit(task);
+        return future;
+    }
+    
+    /**
+     * Limits the calls running on one resource at a time.
+     */
+    protected class Gate {
+        
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+        
+        void submit(Runnable task) {
+            synchronized (this) {
+                if (running >= limit) {
+                    this.waiting.add(task);
+                    return;
+                }
+                this.running++;
+            }
+            this.start(task);
+        }
+        
+        /**
+         * Starts the call on the executor, or on this thread if the executor refuses it.
+         */
+        private void start(Runnable task) {
+            try {
+                getExecutor().execute(() -> this.run(task));
+            } catch (RejectedExecutionException ex) {
+                this.run(task);
+            }
+        }
+        
+        private void run(Runnable task) {
+            try {
+                task.run();
+            } finally {
+                this.finish();
+            }
+        }
+        
+        private void finish() {
+            final Runnable next;
+            synchronized (this) {
+                next = running <= limit ? waiting.poll() : null;
+                if (next == null) this.running--;
+            }
+            if (next != null) this.start(next);
+        }
+    
+    }
+    
+    private static class Default {
+        
+        static final Executor EXECUTOR = create();
+        
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                return Executors.newCachedThreadPool(task -> {
+                    final Thread thread = new Thread(task, "librarian-async");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    
+    }
+
+}
@@ -0,0 +1,35 @@
+package mx.kenzie.librarian;
+
+import java.io.Serializable;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The remote face of a {@link RemoteDispatcher}, exported by each remote library
+ * alongside its resources under a reserved key.
+ *
+ * @author Moderocky
+ */
+interface BatchDispatcher extends Remote {
+    
+    String KEY = RemoteLibrary.RESERVED + "dispatcher:";
+    
+    /**
+     * Makes a batch of calls in order. Each distinct method is sent once, and each call
+     * is the index of its method alongside its arguments, which keeps the request small.
+     */
+    Object[] dispatch(Call[] methods, int[] calls, Object[][] arguments) throws RemoteException;
+    
+    /**
+     * A query method, by the names a match may have and its types as seen from the query.
+     */
+    record Call(String[] names, Class<?> returnType, Class<?>[] parameters) implements Serializable {
+    }
+    
+    /**
+     * The result of a call that threw, or that no resource could accept.
+     */
+    record Failure(Throwable error, boolean unmatched) implements Serializable {
+    }
+
+}
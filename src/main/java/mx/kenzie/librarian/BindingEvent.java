@@ -0,0 +1,28 @@
+package mx.kenzie.librarian;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by Java Flight Recorder when a library provides a query endpoint.
+ *
+ * @author Moderocky
+ */
+@Name("mx.kenzie.librarian.Binding")
+@Label("Endpoint Binding")
+@Category("Librarian")
+@Description("A library provided an endpoint for a query interface.")
+class BindingEvent extends jdk.jfr.Event {
+    
+    @Label("Query")
+    Class<?> query;
+    
+    @Label("Library")
+    Class<?> library;
+    
+    @Label("Cached")
+    boolean cached;
+
+}
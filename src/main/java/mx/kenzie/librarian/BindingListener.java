@@ -0,0 +1,22 @@
+package mx.kenzie.librarian;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The remote face of a {@link RemoteLibrary}'s subscription to registry changes,
+ * exported under a reserved key so that other libraries can find it.
+ *
+ * @author Moderocky
+ */
+interface BindingListener extends Remote {
+    
+    String KEY = RemoteLibrary.RESERVED + "listener:";
+    
+    /**
+     * Reports keys that have been bound or unbound. Each key is given with the stub
+     * now bound to it, or null if it was unbound.
+     */
+    void changed(String[] keys, Remote[] stubs) throws RemoteException;
+
+}
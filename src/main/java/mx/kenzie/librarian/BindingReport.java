@@ -0,0 +1,109 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Describes how each method of a query would be bound by a library, without binding it.
+ *
+ * Each binding gives the resource and resource method chosen for a query method,
+ * or neither if nothing matches it. The endpoint then throws an
+ * {@link UnmatchedEndpointException} when that method is called, unless the library
+ * is strict, in which case looking for the endpoint fails instead. A default method
+ * with no match is not an error, since it runs the interface's own implementation.
+ *
+ * @author Moderocky
+ * @see Library#report(Class)
+ */
+public record BindingReport(Class<?> query, List<Binding> bindings) {
+    
+    static BindingReport of(Class<?> query, Method[] methods, Endpoint[] endpoints) {
+        final List<Binding> bindings = new ArrayList<>(methods.length);
+        for (int i = 0; i < methods.length; i++) {
+            final Endpoint endpoint = endpoints[i];
+            bindings.add(endpoint == null
+                ? new Binding(methods[i], null, null)
+                : new Binding(methods[i], endpoint.resource(), endpoint.method()));
+        }
+        return new BindingReport(query, List.copyOf(bindings));
+    }
+    
+    /**
+     * Throws if any of the methods has no match, naming every one that does not.
+     */
+    static void require(Method[] methods, Endpoint[] endpoints) {
+        final StringJoiner joiner = new StringJoiner(", ");
+        for (int i = 0; i < methods.length; i++) {
+            if (endpoints[i] == null && !methods[i].isDefault()) joiner.add(describe(methods[i]));
+        }
+        if (joiner.length() > 0) throw new UnmatchedEndpointException("Unmatched library methods: " + joiner);
+    }
+    
+    /**
+     * Throws if any query method other than a default method has no match.
+     *
+     * @return this report, if every method is matched
+     */
+    public BindingReport require() throws UnmatchedEndpointException {
+        if (this.isComplete()) return this;
+        final StringJoiner joiner = new StringJoiner(", ");
+        for (final Binding binding : this.getUnmatched()) {
+            if (!binding.method().isDefault()) joiner.add(describe(binding.method()));
+        }
+        throw new UnmatchedEndpointException("Unmatched library methods: " + joiner);
+    }
+    
+    /**
+     * Whether every method is matched, other than default methods, which work without a match.
+     */
+    public boolean isComplete() {
+        for (final Binding binding : bindings) {
+            if (!binding.isMatched() && !binding.method().isDefault()) return false;
+        }
+        return true;
+    }
+    
+    public List<Binding> getMatched() {
+        return bindings.stream().filter(Binding::isMatched).toList();
+    }
+    
+    public List<Binding> getUnmatched() {
+        return bindings.stream().filter(binding -> !binding.isMatched()).toList();
+    }
+    
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(query.getName());
+        for (final Binding binding : bindings) builder.append('\n').append(binding);
+        return builder.toString();
+    }
+    
+    static String describe(Method method) {
+        final StringJoiner joiner = new StringJoiner(", ", method.getDeclaringClass().getSimpleName() + "." + method.getName() + "(", ")");
+        for (final Class<?> parameter : method.getParameterTypes()) joiner.add(parameter.getSimpleName());
+        return joiner.toString();
+    }
+    
+    /**
+     * The match for a single query method, where the resource is the registered object the
+     * target was found on, even if the target is static, and both are null if there is no match.
+     */
+    public record Binding(Method method, Object resource, Method target) {
+        
+        public boolean isMatched() {
+            return target != null;
+        }
+        
+        @Override
+        public String toString() {
+            if (target == null) return describe(method) + (method.isDefault() ? " default" : " unmatched");
+            return describe(method) + " -> " + describe(target);
+        }
+    
+    }
+
+}
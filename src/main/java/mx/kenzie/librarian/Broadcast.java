@@ -0,0 +1,26 @@
+package mx.kenzie.librarian;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how a query method combines its results when the query is broadcast
+ * to every matching resource, see {@link Library#lookForBroadcast(Class)}.
+ *
+ * Methods without this use {@link Reduction#NONE} if they return void,
+ * {@link Reduction#ARRAY} if they return an array and {@link Reduction#FIRST_NON_NULL} otherwise.
+ * It has no effect on normal queries.
+ *
+ * @author Moderocky
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Broadcast {
+    
+    Reduction value();
+
+}
@@ -0,0 +1,230 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.EndpointInvocationException;
+import mx.kenzie.librarian.error.EndpointLoaderException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The invocation handler behind broadcast query endpoints.
+ *
+ * Each query method is bound to every matching resource method, in registration order,
+ * through a method handle that already converts its result to the type being reduced.
+ * Calls are made one after another on the calling thread, stopping early where the
+ * reduction allows it, or all at once on the endpoint's executor, in which case
+ * the results are reduced once every call has finished.
+ *
+ * @author Moderocky
+ */
+class BroadcastEndpoint extends ProxyEndpoint {
+    
+    protected final MethodHandle[][] targets;
+    protected final Reduction[] reductions;
+    protected final Executor executor;
+    
+    BroadcastEndpoint(Class<?> query, Method[] methods, MethodHandle[][] targets, Reduction[] reductions,
+                      EndpointCounter[] counters, Executor executor, boolean remote) {
+        super(query, methods, counters, remote);
+        this.targets = targets;
+        this.reductions = reductions;
+        this.executor = executor;
+    }
+    
+    static <Query> Query create(Class<? extends Query> type, SignatureIndex index, MethodMatcher matcher,
+                                LibraryMetrics metrics, Executor executor, boolean remote) {
+        final ProxyEndpoint handler = bind(type, index, matcher, metrics, executor, remote);
+        return (Query) Proxy.newProxyInstance(BroadcastEndpoint.class.getClassLoader(), new Class[]{type}, handler);
+    }
+    
+    static BroadcastEndpoint bind(Class<?> type, SignatureIndex index, MethodMatcher matcher,
+                                  LibraryMetrics metrics, Executor executor, boolean remote) {
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final MethodHandle[][] targets = new MethodHandle[methods.length][];
+        final Reduction[] reductions = new Reduction[methods.length];
+        final EndpointCounter[] counters = metrics != null ? new EndpointCounter[methods.length] : null;
+        for (int i = 0; i < methods.length; i++) {
+            if (metrics != null) counters[i] = metrics.counter(type, methods[i]);
+            reductions[i] = getReduction(methods[i]);
+            final Class<?> element = getElement(methods[i], reductions[i]);
+            final Endpoint[] endpoints = find(index, matcher, type, methods[i], reductions[i]);
+            if (endpoints.length == 0 && metrics != null && !methods[i].isDefault()) metrics.unmatched(type, methods[i]);
+            targets[i] = new MethodHandle[endpoints.length];
+            for (int j = 0; j < endpoints.length; j++) targets[i][j] = createSpreader(methods[i], element, endpoints[j]);
+        }
+        return new BroadcastEndpoint(type, methods, targets, reductions, counters, executor, remote);
+    }
+    
+    /**
+     * Finds the reduction for a query method, and checks that its return type allows it.
+     */
+    static Reduction getReduction(Method method) {
+        final Broadcast broadcast = method.getAnnotation(Broadcast.class);
+        final Class<?> type = method.getReturnType();
+        final Reduction reduction;
+        if (broadcast != null) reduction = broadcast.value();
+        else if (type == void.class) reduction = Reduction.NONE;
+        else if (type.isArray()) reduction = Reduction.ARRAY;
+        else reduction = Reduction.FIRST_NON_NULL;
+        final boolean valid = switch (reduction) {
+            case NONE -> type == void.class;
+            case ARRAY -> type.isArray();
+            case SUM -> type == int.class || type == long.class || type == float.class || type == double.class;
+            case FIRST_NON_NULL -> type != void.class;
+            case ANY, ALL -> type == boolean.class;
+        };
+        if (!valid) throw new EndpointLoaderException("Broadcast method '" + method.getName()
+            + "' cannot use " + reduction + " with return type " + type.getSimpleName() + ".");
+        return reduction;
+    }
+    
+    /**
+     * Gets the type each match's result is converted to before it is reduced.
+     */
+    static Class<?> getElement(Method method, Reduction reduction) {
+        return switch (reduction) {
+            case NONE -> void.class;
+            case ARRAY -> method.getReturnType().getComponentType();
+            default -> method.getReturnType();
+        };
+    }
+    
+    /**
+     * Finds the matches for a query method. A primitive that takes the first result can only
+     * ever use the first match, so no others are bound.
+     */
+    static Endpoint[] find(SignatureIndex index, MethodMatcher matcher, Class<?> query, Method method, Reduction reduction) {
+        final Class<?>[] parameters = AccessUtility.getParameterTypes(query, method);
+        final Endpoint[] endpoints = index.findAll(matcher, matcher.getNames(method), getElement(method, reduction), parameters);
+        if (reduction == Reduction.FIRST_NON_NULL && method.getReturnType().isPrimitive() && endpoints.length > 1)
+            return new Endpoint[]{endpoints[0]};
+        return endpoints;
+    }
+    
+    protected static MethodHandle createSpreader(Method method, Class<?> element, Endpoint endpoint) {
+        try {
+            MethodHandle handle = AccessUtility.unreflect(endpoint.method());
+            if (!Modifier.isStatic(endpoint.method().getModifiers())) handle = handle.bindTo(endpoint.resource());
+            return handle
+                .asType(MethodType.methodType(element, method.getParameterTypes()))
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access resource method '" + endpoint.method().getName() + "'.", ex);
+        }
+    }
+    
+    /**
+     * Broadcast methods with no matches are not an error, since most reductions have a result for none.
+     * A default method with no matches runs the interface's own implementation instead.
+     */
+    @Override
+    protected boolean isMatched(int slot) {
+        return targets[slot].length > 0 || !methods[slot].isDefault();
+    }
+    
+    @Override
+    protected Object call(int slot, Object... args) throws Throwable {
+        final MethodHandle[] targets = this.targets[slot];
+        final Object[] results = executor != null && targets.length > 1 ? this.callAll(targets, args) : null;
+        final Class<?> type = methods[slot].getReturnType();
+        switch (reductions[slot]) {
+            case NONE -> {
+                for (int i = 0; i < targets.length; i++) this.result(targets, results, i, args);
+                return null;
+            }
+            case ARRAY -> {
+                final Object array = Array.newInstance(type.getComponentType(), targets.length);
+                for (int i = 0; i < targets.length; i++) Array.set(array, i, this.result(targets, results, i, args));
+                return array;
+            }
+            case SUM -> {
+                Object sum = zero(type);
+                for (int i = 0; i < targets.length; i++) sum = add(type, sum, this.result(targets, results, i, args));
+                return sum;
+            }
+            case ANY, ALL -> {
+                final boolean any = reductions[slot] == Reduction.ANY;
+                for (int i = 0; i < targets.length; i++) {
+                    if ((Boolean) this.result(targets, results, i, args) == any) return any;
+                }
+                return !any;
+            }
+            default -> {
+                for (int i = 0; i < targets.length; i++) {
+                    final Object result = this.result(targets, results, i, args);
+                    if (result != null) return result;
+                }
+                if (type.isPrimitive())
+                    throw new UnmatchedEndpointException("Unmatched library method: '" + methods[slot].getName() + "'");
+                return null;
+            }
+        }
+    }
+    
+    protected Object result(MethodHandle[] targets, Object[] results, int index, Object... args) throws Throwable {
+        if (results != null) return results[index];
+        try {
+            return (Object) targets[index].invokeExact(args);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new EndpointInvocationException(ex);
+        }
+    }
+    
+    /**
+     * Makes every call on the executor and waits for them all, in order.
+     * The first failure is thrown once the calls before it have finished.
+     */
+    protected Object[] callAll(MethodHandle[] targets, Object... args) throws Throwable {
+        final CompletableFuture<?>[] futures = new CompletableFuture[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            final MethodHandle target = targets[i];
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            futures[i] = future;
+            executor.execute(() -> {
+                try {
+                    future.complete((Object) target.invokeExact(args));
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        }
+        final Object[] results = new Object[targets.length];
+        try {
+            for (int i = 0; i < futures.length; i++) results[i] = futures[i].get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EndpointInvocationException(ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException || cause instanceof Error) throw cause;
+            throw new EndpointInvocationException(cause);
+        }
+        return results;
+    }
+    
+    private static Object zero(Class<?> type) {
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0F;
+        return 0D;
+    }
+    
+    private static Object add(Class<?> type, Object sum, Object value) {
+        if (type == int.class) return (Integer) sum + (Integer) value;
+        if (type == long.class) return (Long) sum + (Long) value;
+        if (type == float.class) return (Float) sum + (Float) value;
+        return (Double) sum + (Double) value;
+    }
+
+}
@@ -1,192 +1,798 @@
 package mx.kenzie.librarian;
 
 import mx.kenzie.librarian.error.EndpointLoaderException;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.commons.GeneratorAdapter;
 
-import java.lang.reflect.*;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import static org.objectweb.asm.Opcodes.*;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * A library that builds and class-loads a bytecode implementation of the query
  * interface in order to speed up execution.
  *
  * This is significantly faster than the typical proxy implementation and has
- * all the advantages of JIT, but is unable to use private and local methods or interfaces.
+ * all the advantages of JIT. Endpoint classes are hidden, so they can be unloaded.
  *
  * @author Moderocky
  */
 public class CompiledEndpointLibrary extends SimpleLibrary {
     
-    protected volatile int compile;
-    protected RuntimeClassLoader loader = new RuntimeClassLoader();
-    protected final Map<Class<?>, Class<?>> endpoints = new HashMap<>();
+    static final String PRECOMPILED_SUFFIX = "$LibraryEndpoint";
+    private static final ClassValue<Optional<Precompiled>> PRECOMPILED = new ClassValue<>() {
+        @Override
+        protected Optional<Precompiled> computeValue(Class<?> type) {
+            return Optional.ofNullable(findPrecompiled(type));
+        }
+    };
+    
+    private static final ClassValue<MethodHandles.Lookup> HOSTS = new ClassValue<>() {
+        @Override
+        protected MethodHandles.Lookup computeValue(Class<?> type) {
+            return createHost(type);
+        }
+    };
+    
+    private static final MethodHandle LINK, LINK_MATCH, LINK_LIVE;
+    
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LINK = lookup.findVirtual(Linker.class, "link", MethodType.methodType(CallSite.class, int.class, MethodType.class));
+            LINK_MATCH = lookup.findStatic(CompiledEndpointLibrary.class, "linkMatch",
+                MethodType.methodType(CallSite.class, Method[].class, int.class, MethodType.class));
+            LINK_LIVE = lookup.findStatic(CompiledEndpointLibrary.class, "linkLive",
+                MethodType.methodType(CallSite.class, LiveEndpoint.class, int.class, MethodType.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    protected final AtomicInteger compile = new AtomicInteger();
+    protected final Map<Shape, MethodHandle> endpoints = new ConcurrentHashMap<>();
+    protected final Map<Class<?>, Bound> instances = new ConcurrentHashMap<>();
+    protected final Map<Shape, MethodHandle> broadcasts = new ConcurrentHashMap<>();
+    protected final Map<Class<?>, Bound> broadcasting = new ConcurrentHashMap<>();
+    protected final Map<List<Class<?>>, byte[]> lazies = new ConcurrentHashMap<>();
+    protected final EndpointCache cache;
+    
+    public CompiledEndpointLibrary() {
+        this(null, null);
+    }
+    
+    /**
+     * Creates a library that keeps the bytecode of its endpoints in the given directory,
+     * so that after a restart they can be defined again without being generated.
+     */
+    public CompiledEndpointLibrary(Path cache) {
+        this(cache, null);
+    }
+    
+    /**
+     * Creates a library whose endpoints count and time their calls in counters
+     * provided by the metrics. The counting code is only generated when metrics are given.
+     */
+    public CompiledEndpointLibrary(LibraryMetrics metrics) {
+        this(null, metrics);
+    }
+    
+    public CompiledEndpointLibrary(Path cache, LibraryMetrics metrics) {
+        super(InvocationStrategy.COMPILED, metrics);
+        this.cache = cache != null ? new EndpointCache(cache) : null;
+    }
+    
+    protected CompiledEndpointLibrary(SimpleLibrary parent, EndpointCache cache, LibraryMetrics metrics) {
+        super(parent, InvocationStrategy.COMPILED, metrics);
+        this.cache = cache;
+    }
+    
+    /**
+     * Creates a compiled library whose lookups fall back on this one's resources. The child
+     * shares this library's bytecode cache directory, but compiles and caches its own endpoints,
+     * each of which may call resources of both libraries. The child's cached endpoints are
+     * replaced after any change to the resources of an ancestor, since it may alter their matches.
+     */
+    @Override
+    public CompiledEndpointLibrary createChild() {
+        return new CompiledEndpointLibrary(this, cache, metrics);
+    }
     
+    /**
+     * Finds an endpoint for the query. Endpoints are cached against the library version,
+     * so repeat queries return the same endpoint until a resource is registered or removed.
+     * Generation does not lock the library: if two threads compile the same query at once,
+     * both classes are valid and the first to be stored is re-used.
+     */
     @Override
     public <Query> Query lookFor(Class<? extends Query> type) {
         assert type.isInterface();
-        return buildClass(type);
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final int version = this.version;
+        final Bound bound = instances.get(type);
+        if (bound != null && bound.version() == version) {
+            this.bound(type, event, start, true);
+            return (Query) bound.endpoint();
+        }
+        final Query endpoint = buildClass(type);
+        instances.put(type, new Bound(version, endpoint));
+        this.bound(type, event, start, false);
+        return endpoint;
+    }
+    
+    /**
+     * Finds endpoints for many queries at once. Those that are not already cached or
+     * precompiled are grouped by package, and each group is bound in one pass and
+     * compiled to a single class implementing every query in it, so a group needs only
+     * one class definition. Endpoints from the same group are therefore the same object.
+     *
+     * A method declared with the same signature by more than one query in a group is
+     * implemented once, since it always has the same match, and with metrics its calls
+     * are counted against the first of those queries. A query whose method has the same
+     * signature but different aliases, and so may have a different match, gets a class of its own.
+     */
+    @Override
+    public Object[] lookForAll(Class<?>... types) {
+        final int version = this.version;
+        final Object[] found = new Object[types.length];
+        final Map<Class<?>, Object> built = new HashMap<>();
+        final Map<Group, List<Class<?>>> groups = new LinkedHashMap<>();
+        final BindingEvent[] events = new BindingEvent[types.length];
+        final long start = metrics != null ? System.nanoTime() : 0;
+        for (int i = 0; i < types.length; i++) {
+            final Class<?> type = types[i];
+            assert type.isInterface();
+            events[i] = new BindingEvent();
+            events[i].begin();
+            final Bound bound = instances.get(type);
+            if (bound != null && bound.version() == version) {
+                found[i] = bound.endpoint();
+                this.bound(type, events[i], start, true);
+                continue;
+            }
+            if (built.containsKey(type)) continue;
+            final Precompiled precompiled = PRECOMPILED.get(type).orElse(null);
+            if (precompiled != null && !this.bindsLazily()) built.put(type, this.buildPrecompiled(precompiled));
+            else if (!AccessUtility.isPlain(type)) built.put(type, this.buildClass(type));
+            else {
+                final List<Class<?>> group = groups.computeIfAbsent(new Group(type.getClassLoader(), type.getPackageName()), key -> new ArrayList<>());
+                if (!group.contains(type)) group.add(type);
+            }
+        }
+        for (final List<Class<?>> group : groups.values()) {
+            final Map<String, Method> methods = new LinkedHashMap<>();
+            final List<Class<?>> merged = new ArrayList<>();
+            for (final Class<?> type : group) {
+                final Method[] declared = AccessUtility.getQueryMethods(type);
+                if (!this.isMergeable(methods, declared)) {
+                    built.put(type, this.buildClass(type));
+                    continue;
+                }
+                for (final Method method : declared)
+                    methods.putIfAbsent(method.getName() + AccessUtility.getDescriptor(method), method);
+                merged.add(type);
+            }
+            if (merged.isEmpty()) continue;
+            final Object endpoint = this.buildClass(merged.toArray(new Class<?>[0]), methods.values().toArray(new Method[0]));
+            for (final Class<?> type : merged) built.put(type, endpoint);
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (found[i] != null) continue;
+            found[i] = built.get(types[i]);
+            instances.put(types[i], new Bound(version, found[i]));
+            this.bound(types[i], events[i], start, false);
+        }
+        return found;
     }
     
-    protected synchronized <Query> Query buildClass(Class<? extends Query> type) {
+    protected <Query> Query buildClass(Class<? extends Query> type) {
         assert type.isInterface();
-        final Object[] resources = this.getResources();
-        final Method[] methods = type.getDeclaredMethods();
+        final Precompiled precompiled = this.bindsLazily() ? null : PRECOMPILED.get(type).orElse(null);
+        if (precompiled != null) return this.buildPrecompiled(precompiled);
+        return this.buildClass(new Class<?>[]{type}, AccessUtility.getQueryMethods(type));
+    }
+    
+    /**
+     * Binds the methods and builds an endpoint implementing every one of the queries,
+     * which must share a package. Each method is reported against the first query that has it.
+     * A default method with no match is left out, so the query's own implementation runs.
+     *
+     * Classes are cached by the resource methods they were bound to and re-used for
+     * new instances, until no registered resource has one of those methods.
+     */
+    protected <Query> Query buildClass(Class<?>[] types, Method[] methods) {
+        if (this.bindsLazily()) return this.buildLazy(types, methods);
+        final Endpoint[] found = new Endpoint[methods.length];
+        for (int i = 0; i < methods.length; i++) found[i] = this.find(getQuery(types, methods[i]), methods[i]);
+        if (strict) BindingReport.require(methods, found);
+        final Object[] targets = new Object[metrics != null ? methods.length * 2 : methods.length];
+        final Method[] matches = new Method[methods.length];
+        int current = 0;
+        for (int i = 0; i < methods.length; i++) {
+            final Class<?> type = getQuery(types, methods[i]);
+            final Endpoint endpoint = found[i];
+            if (endpoint != null) {
+                targets[current++] = endpoint.resource();
+                matches[i] = endpoint.method();
+            } else if (methods[i].isDefault()) continue;
+            else if (metrics != null) metrics.unmatched(type, methods[i]);
+            if (metrics != null) targets[current++] = metrics.counter(type, methods[i]);
+        }
+        final Shape shape = new Shape(List.of(types), Arrays.asList(matches));
+        final MethodHandle known = endpoints.get(shape);
+        if (known != null) return this.buildEndpoint(known, targets);
+        final MethodHandle factory = this.createFactory(this.compileClass(types, methods, matches));
+        final MethodHandle existing = endpoints.putIfAbsent(shape, factory);
+        return this.buildEndpoint(existing != null ? existing : factory, targets);
+    }
+    
+    /**
+     * Builds an endpoint whose methods are each bound the first time they are called.
+     * Each method calls through an invokedynamic call site, which is linked against the
+     * resources registered at that moment and is then constant. The class is generated
+     * once for each query but defined for each endpoint, since the call sites belong to it.
+     */
+    protected <Query> Query buildLazy(Class<?>[] types, Method[] methods) {
+        final Object[] targets = new Object[metrics != null ? methods.length : 0];
+        for (int i = 0; i < targets.length; i++) targets[i] = metrics.counter(getQuery(types, methods[i]), methods[i]);
+        final MethodHandles.Lookup host = this.getHost(types[0]);
+        final byte[] bytes = lazies.computeIfAbsent(List.of(types), key -> this.compileLazy(host, types, methods));
+        final MethodHandle link = LINK.bindTo(new Linker(types, methods));
+        return this.buildEndpoint(this.createFactory(this.defineClass(host, types[0], bytes, List.of(link))), targets);
+    }
+    
+    protected byte[] compileLazy(MethodHandles.Lookup host, Class<?>[] types, Method[] methods) {
+        final boolean instrumented = metrics != null;
+        final String key = cache != null ? EndpointCache.getKey(types, methods, new Method[methods.length], new boolean[methods.length], instrumented) + "\nlazy" : null;
+        byte[] bytes = cache != null ? cache.load(key) : null;
+        if (bytes == null) {
+            final EndpointCompiler compiler = new EndpointCompiler(this.createName(host), types, instrumented);
+            for (final Method method : methods) compiler.writeDynamicLink(method);
+            bytes = compiler.toByteArray();
+            if (cache != null) cache.store(key, bytes);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Builds the endpoint the annotation processor generated for the query, which needs no
+     * bytecode generation at runtime. It calls every resource method through a method handle,
+     * so it starts faster but may not reach the peak speed of a runtime-compiled endpoint.
+     */
+    protected <Query> Query buildPrecompiled(Precompiled precompiled) {
+        final Method[] methods = precompiled.methods();
+        final Endpoint[] found = new Endpoint[methods.length];
+        for (int i = 0; i < methods.length; i++) found[i] = this.find(precompiled.type(), methods[i]);
+        if (strict) BindingReport.require(methods, found);
         final Object[] targets = new Object[methods.length];
-        if (endpoints.containsKey(type)) {
-            int current = 0;
-            for (final Method method : methods) {
-                for (final Object resource : resources) {
-                    final Method match = AccessUtility.getMatchingMethod(resource, method);
-                    if (match == null) continue;
-                    targets[current] = resource;
-                    current++;
-                    break;
+        final MethodHandle[] handles = new MethodHandle[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            final Endpoint endpoint = found[i];
+            if (endpoint == null && methods[i].isDefault()) continue;
+            if (endpoint == null) {
+                if (metrics != null) metrics.unmatched(precompiled.type(), methods[i]);
+                handles[i] = this.createUnmatched(methods[i]);
+                if (metrics != null) handles[i] = AccessUtility.failing(handles[i], metrics.counter(precompiled.type(), methods[i]));
+            } else {
+                targets[i] = endpoint.resource();
+                handles[i] = this.createHandle(methods[i], endpoint.method());
+                if (metrics != null) handles[i] = AccessUtility.timed(handles[i], metrics.counter(precompiled.type(), methods[i]));
+            }
+        }
+        return this.buildPrecompiled(precompiled, targets, handles);
+    }
+    
+    protected <Query> Query buildPrecompiled(Precompiled precompiled, Object[] targets, MethodHandle[] handles) {
+        try {
+            return (Query) (Object) precompiled.factory().invokeExact(targets, handles);
+        } catch (Throwable ex) {
+            throw new EndpointLoaderException("Unable to create precompiled endpoint for resource.", ex);
+        }
+    }
+    
+    /**
+     * Finds a broadcast endpoint for the query. Without an executor, its methods are compiled
+     * to call every match in turn and reduce the results in bytecode, and the endpoint is
+     * cached like a normal one. Broadcasting on an executor uses a proxy endpoint.
+     */
+    @Override
+    public <Query> Query lookForBroadcast(Class<? extends Query> type, Executor executor) {
+        if (executor != null) return super.lookForBroadcast(type, executor);
+        assert type.isInterface();
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final int version = this.version;
+        final Bound bound = broadcasting.get(type);
+        if (bound != null && bound.version() == version) {
+            this.bound(type, event, start, true);
+            return (Query) bound.endpoint();
+        }
+        final Query endpoint = this.buildBroadcast(type);
+        broadcasting.put(type, new Bound(version, endpoint));
+        this.bound(type, event, start, false);
+        return endpoint;
+    }
+    
+    protected <Query> Query buildBroadcast(Class<? extends Query> type) {
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final Reduction[] reductions = new Reduction[methods.length];
+        final Method[][] matches = new Method[methods.length][];
+        final List<Object> targets = new ArrayList<>();
+        final List<Method> bindings = new ArrayList<>();
+        for (int i = 0; i < methods.length; i++) {
+            reductions[i] = BroadcastEndpoint.getReduction(methods[i]);
+            final Endpoint[] found = BroadcastEndpoint.find(index, matcher, type, methods[i], reductions[i]);
+            if (found.length == 0 && methods[i].isDefault()) {
+                matches[i] = null;
+                bindings.add(null);
+                continue;
+            }
+            if (found.length == 0 && metrics != null) metrics.unmatched(type, methods[i]);
+            matches[i] = new Method[found.length];
+            for (int j = 0; j < found.length; j++) {
+                targets.add(found[j].resource());
+                bindings.add(matches[i][j] = found[j].method());
+            }
+            bindings.add(null); // Separates the matches of each method.
+            if (metrics != null) targets.add(metrics.counter(type, methods[i]));
+        }
+        final Shape shape = new Shape(type, bindings);
+        final MethodHandle known = broadcasts.get(shape);
+        if (known != null) return this.buildEndpoint(known, targets.toArray());
+        final MethodHandle factory = this.createFactory(this.compileBroadcast(type, methods, reductions, matches));
+        final MethodHandle existing = broadcasts.putIfAbsent(shape, factory);
+        return this.buildEndpoint(existing != null ? existing : factory, targets.toArray());
+    }
+    
+    protected MethodHandles.Lookup compileBroadcast(Class<?> type, Method[] methods, Reduction[] reductions, Method[][] matches) {
+        final MethodHandles.Lookup host = this.getHost(type);
+        final List<MethodHandle> handles = new ArrayList<>();
+        final List<Method> links = new ArrayList<>();
+        final boolean[][] direct = new boolean[methods.length][];
+        for (int i = 0; i < methods.length; i++) {
+            if (matches[i] == null) continue;
+            direct[i] = new boolean[matches[i].length];
+            final Class<?> element = BroadcastEndpoint.getElement(methods[i], reductions[i]);
+            for (int j = 0; j < matches[i].length; j++) {
+                direct[i][j] = this.isDirect(type, matches[i][j]);
+                if (direct[i][j]) links.add(matches[i][j]);
+                else handles.add(this.createHandle(methods[i], element, matches[i][j]));
+            }
+        }
+        handles.add(0, this.createLink(links));
+        final boolean instrumented = metrics != null;
+        final String key = cache != null ? EndpointCache.getKey(type, methods, reductions, matches, direct, instrumented) : null;
+        byte[] bytes = cache != null ? cache.load(key) : null;
+        if (bytes == null) {
+            final EndpointCompiler compiler = new EndpointCompiler(this.createName(host), type, instrumented);
+            for (int i = 0; i < methods.length; i++) {
+                if (matches[i] != null) compiler.writeBroadcast(methods[i], reductions[i], matches[i], direct[i]);
+            }
+            bytes = compiler.toByteArray();
+            if (cache != null) cache.store(key, bytes);
+        }
+        return this.defineClass(host, type, bytes, List.copyOf(handles));
+    }
+    
+    @Override
+    protected LiveEndpoint createLive(Class<?> type) {
+        final Precompiled precompiled = PRECOMPILED.get(type).orElse(null);
+        return new LiveEndpoint(type, precompiled != null ? precompiled.methods() : AccessUtility.getQueryMethods(type));
+    }
+    
+    /**
+     * Builds a live endpoint, whose methods each call through an invokedynamic call site
+     * linked to the live endpoint's own call site for that method. The class is compiled
+     * once for each query, and the sites are retargeted as resources change.
+     */
+    @Override
+    protected Object buildLive(LiveEndpoint live) {
+        final Class<?> type = live.query;
+        final Method[] methods = live.methods;
+        final Precompiled precompiled = PRECOMPILED.get(type).orElse(null);
+        if (precompiled != null) {
+            final MethodHandle[] handles = new MethodHandle[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                handles[i] = live.getInvoker(i);
+                if (metrics != null) handles[i] = AccessUtility.timed(handles[i], metrics.counter(type, methods[i]));
+            }
+            return this.buildPrecompiled(precompiled, new Object[methods.length], handles);
+        }
+        final Object[] targets = new Object[metrics != null ? methods.length : 0];
+        for (int i = 0; i < targets.length; i++) targets[i] = metrics.counter(type, methods[i]);
+        final MethodHandles.Lookup host = this.getHost(type);
+        final boolean instrumented = metrics != null;
+        final String key = cache != null ? EndpointCache.getKey(type, methods, new Method[methods.length], new boolean[methods.length], instrumented) + "\nlive" : null;
+        byte[] bytes = cache != null ? cache.load(key) : null;
+        if (bytes == null) {
+            final EndpointCompiler compiler = new EndpointCompiler(this.createName(host), type, instrumented);
+            for (final Method method : methods) compiler.writeDynamicLink(method);
+            bytes = compiler.toByteArray();
+            if (cache != null) cache.store(key, bytes);
+        }
+        final MethodHandle factory = this.createFactory(this.defineClass(host, type, bytes, List.of(LINK_LIVE.bindTo(live))));
+        return this.buildEndpoint(factory, targets);
+    }
+    
+    /**
+     * Finds the endpoint generated for this query at compile time, if there is one.
+     * An endpoint whose methods no longer match the query's, or that does not implement
+     * each of its default methods, is ignored.
+     */
+    static Precompiled findPrecompiled(Class<?> type) {
+        final Class<?> endpoint;
+        try {
+            endpoint = Class.forName(type.getName() + PRECOMPILED_SUFFIX, false, type.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
+        if (!type.isAssignableFrom(endpoint)) return null;
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(endpoint, MethodHandles.lookup());
+            final String[] signatures = (String[]) lookup.findStaticGetter(endpoint, "SIGNATURES", String[].class).invoke();
+            final Method[] methods = new Method[signatures.length];
+            for (final Method method : type.getMethods()) {
+                final String signature = method.getName() + AccessUtility.getDescriptor(method);
+                boolean listed = false;
+                for (int i = 0; i < signatures.length; i++) {
+                    if (!signatures[i].equals(signature)) continue;
+                    methods[i] = method;
+                    listed = true;
                 }
+                if (!listed && method.isDefault()) return null;
             }
-            return (Query) buildEndpoint(endpoints.get(type), targets);
-        }
-        final String namespace = "mx.kenzie.librarian.generated.$QueryClass" + this.hashCode() + "$" + (++compile);
-        final String internalName = namespace.replace(".", "/");
-        final ClassWriter writer = new ClassWriter(ASM9 + ClassWriter.COMPUTE_MAXS);
-        writer.visit(V11, ACC_PUBLIC,
-            internalName, null, "java/lang/Object",
-            new String[]{this.getInternalName(type)});
-        final FieldVisitor fieldVisitor;
-        final MethodVisitor methodVisitor;
-        fieldVisitor = writer.visitField(ACC_PRIVATE | ACC_FINAL, "targets", "[Ljava/lang/Object;", null, null);
-        fieldVisitor.visitEnd();
-        methodVisitor = writer.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
-        methodVisitor.visitCode();
-        methodVisitor.visitVarInsn(ALOAD, 0);
-        methodVisitor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
-        methodVisitor.visitVarInsn(ALOAD, 0);
-        methodVisitor.visitVarInsn(ALOAD, 1);
-        methodVisitor.visitFieldInsn(PUTFIELD, internalName, "targets", "[Ljava/lang/Object;");
-        methodVisitor.visitInsn(RETURN);
-        methodVisitor.visitMaxs(2, 2);
-        methodVisitor.visitEnd();
-        int current = 0;
-        for (final Method method : methods) {
-            for (final Object resource : resources) {
-                final Method match = AccessUtility.getMatchingMethod(resource, method);
-                if (match == null) continue;
-                targets[current] = resource;
-                final GeneratorAdapter adapter = new GeneratorAdapter(
-                    method.getModifiers() & ~ACC_ABSTRACT,
-                    new org.objectweb.asm.commons.Method(method.getName(), this.getDescriptor(method)),
-                    null, null, writer
-                );
-                this.writeCallerLink(adapter, internalName, match, current);
-                current++;
-                break;
+            for (final Method method : methods) {
+                if (method == null) return null;
+            }
+            final MethodHandle factory = lookup
+                .findConstructor(endpoint, MethodType.methodType(void.class, Object[].class, MethodHandle[].class))
+                .asType(MethodType.methodType(Object.class, Object[].class, MethodHandle[].class));
+            return new Precompiled(type, factory, methods);
+        } catch (Throwable ex) {
+            throw new EndpointLoaderException("Unable to load precompiled endpoint for '" + type.getName() + "'.", ex);
+        }
+    }
+    
+    protected MethodHandles.Lookup compileClass(Class<?> type, Method[] methods, Method[] matches) {
+        return this.compileClass(new Class<?>[]{type}, methods, matches);
+    }
+    
+    /**
+     * Compiles a class implementing the queries, holding each bound resource in its own typed
+     * final field. Resource methods it can link to directly are called through invokedynamic
+     * call sites linked to the method itself, with any conversions the matcher allows emitted
+     * around the call. Other resource methods are called through method handles held as class data.
+     */
+    protected MethodHandles.Lookup compileClass(Class<?>[] types, Method[] methods, Method[] matches) {
+        final Class<?> type = types[0];
+        final MethodHandles.Lookup host = this.getHost(type);
+        final List<MethodHandle> handles = new ArrayList<>();
+        final List<Method> links = new ArrayList<>();
+        final boolean[] direct = new boolean[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            if (matches[i] == null) continue;
+            direct[i] = !AsyncDispatcher.isAsync(methods[i], matches[i]) && this.isDirect(type, matches[i]);
+            if (direct[i]) links.add(matches[i]);
+            else handles.add(this.createHandle(methods[i], matches[i]));
+        }
+        handles.add(0, this.createLink(links));
+        final boolean instrumented = metrics != null;
+        final String key = cache != null ? EndpointCache.getKey(types, methods, matches, direct, instrumented) : null;
+        byte[] bytes = cache != null ? cache.load(key) : null;
+        if (bytes == null) {
+            final EndpointCompiler compiler = new EndpointCompiler(this.createName(host), types, instrumented);
+            for (int i = 0; i < methods.length; i++) {
+                if (matches[i] == null && methods[i].isDefault()) continue;
+                if (matches[i] == null) compiler.writeUnmatched(methods[i]);
+                else if (direct[i]) compiler.writeCallerLink(methods[i], matches[i]);
+                else compiler.writeHandleLink(methods[i]);
             }
+            bytes = compiler.toByteArray();
+            if (cache != null) cache.store(key, bytes);
+        }
+        return this.defineClass(host, type, bytes, List.copyOf(handles));
+    }
+    
+    /**
+     * Whether the methods can share a class with those already in a group. A method with the same
+     * signature as one in the group is only implemented once, so the two must be matched under the
+     * same names and agree on whether they are default methods, or they might be bound differently.
+     */
+    protected boolean isMergeable(Map<String, Method> methods, Method[] declared) {
+        for (final Method method : declared) {
+            final Method existing = methods.get(method.getName() + AccessUtility.getDescriptor(method));
+            if (existing == null || existing.equals(method)) continue;
+            if (existing.isDefault() != method.isDefault()) return false;
+            if (!Arrays.equals(matcher.getNames(existing), matcher.getNames(method))) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Finds the first of the queries that has the method.
+     */
+    protected static Class<?> getQuery(Class<?>[] types, Method method) {
+        for (final Class<?> type : types) {
+            if (method.getDeclaringClass().isAssignableFrom(type)) return type;
+        }
+        return method.getDeclaringClass();
+    }
+    
+    /**
+     * Creates the link handle for a class whose call sites each call one of these methods, in order.
+     */
+    protected MethodHandle createLink(List<Method> links) {
+        return MethodHandles.insertArguments(LINK_MATCH, 0, (Object) links.toArray(new Method[0]));
+    }
+    
+    private static CallSite linkMatch(Method[] links, int index, MethodType type) throws IllegalAccessException {
+        return new ConstantCallSite(AccessUtility.unreflect(links[index]).asType(type));
+    }
+    
+    /**
+     * The call sites of a live endpoint are its own, which are retargeted as the library changes.
+     */
+    private static CallSite linkLive(LiveEndpoint live, int index, MethodType type) {
+        return live.sites[index];
+    }
+    
+    protected String createName(MethodHandles.Lookup host) {
+        final String namespace = host.lookupClass().getPackageName();
+        return (namespace.isEmpty() ? "" : namespace.replace('.', '/') + "/") + "$QueryClass" + compile.incrementAndGet();
+    }
+    
+    protected MethodHandles.Lookup defineClass(MethodHandles.Lookup host, Class<?> type, byte[] bytes, List<MethodHandle> handles) {
+        try {
+            return host.defineHiddenClassWithClassData(bytes, handles, false);
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to define compiled endpoint for '" + type.getName() + "'.", ex);
+        }
+    }
+    
+    /**
+     * Gets the lookup that endpoints for the query are defined with, which is normally
+     * in the query's own package. If that package is not open to Librarian with full
+     * privilege, such as when the query comes from another class loader's module,
+     * a host class is defined next to it in a small class loader of its own.
+     */
+    protected MethodHandles.Lookup getHost(Class<?> type) {
+        final MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access the package of '" + type.getName() + "'.", ex);
+        }
+        if (lookup.hasFullPrivilegeAccess()) return lookup;
+        if (!Modifier.isPublic(type.getModifiers()))
+            throw new EndpointLoaderException("Unable to access the package of '" + type.getName() + "', which must be open to Librarian for non-public queries.");
+        return HOSTS.get(type);
+    }
+    
+    static MethodHandles.Lookup createHost(Class<?> type) {
+        final String namespace = type.getPackageName();
+        final String name = (namespace.isEmpty() ? "" : namespace + ".") + "$QueryHost";
+        final byte[] bytes = EndpointCompiler.compileHost(name.replace('.', '/'));
+        try {
+            final Class<?> host = new HostLoader(type.getClassLoader()).define(name, bytes);
+            return (MethodHandles.Lookup) host.getMethod("lookup").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            throw new EndpointLoaderException("Unable to create a host for '" + type.getName() + "'.", ex);
+        }
+    }
+    
+    /**
+     * Whether the generated endpoint, which lives alongside the query interface,
+     * is able to link to this resource method directly.
+     * Anything else is called through a method handle constant.
+     */
+    protected boolean isDirect(Class<?> type, Method method) {
+        final Class<?> owner = method.getDeclaringClass();
+        if (owner.isHidden()) return false;
+        if (!Modifier.isPublic(owner.getModifiers()) || !Modifier.isPublic(method.getModifiers())) return false;
+        if (!owner.getModule().isExported(owner.getPackageName(), type.getModule())) return false;
+        try {
+            return Class.forName(owner.getName(), false, type.getClassLoader()) == owner;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+    
+    protected MethodHandle createHandle(Method method, Method match) {
+        if (AsyncDispatcher.isAsync(method, match)) return async.createHandle(method, match);
+        return this.createHandle(method, method.getReturnType(), match);
+    }
+    
+    /**
+     * Creates a handle taking the target as an object, followed by the query method's parameters,
+     * and returning the given type. The target is ignored if the resource method is static.
+     */
+    protected MethodHandle createHandle(Method method, Class<?> returnType, Method match) {
+        final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+        parameters[0] = Object.class;
+        System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+        try {
+            MethodHandle handle = AccessUtility.unreflect(match);
+            if (Modifier.isStatic(match.getModifiers())) handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            return handle.asType(MethodType.methodType(returnType, parameters));
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access resource method '" + match.getName() + "'.", ex);
+        }
+    }
+    
+    /**
+     * Creates a handle of the same shape as {@link #createHandle(Method, Method)}
+     * that throws when the query method has no match.
+     */
+    protected MethodHandle createUnmatched(Method method) {
+        return AccessUtility.unmatched(method, Object.class);
+    }
+    
+    /**
+     * Creates a handle calling the interface's own implementation of a default method,
+     * taking the endpoint followed by the method's parameters.
+     */
+    static MethodHandle createDefault(Method method) {
+        try {
+            return AccessUtility.getSpecial(method);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access default method '" + method.getName() + "'.", ex);
+        }
+    }
+    
+    protected MethodHandle createFactory(MethodHandles.Lookup compiled) {
+        try {
+            return compiled
+                .findConstructor(compiled.lookupClass(), MethodType.methodType(void.class, Object[].class))
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to create compiled endpoint for resource.", ex);
         }
-        writer.visitEnd();
-        final byte[] bytes = writer.toByteArray();
-        final Class<? extends Query> compiled = (Class<? extends Query>) loader.loadClass(namespace, bytes);
-        endpoints.put(type, compiled);
-        return buildEndpoint(compiled, targets);
     }
     
-    protected <Query> Query buildEndpoint(Class<Query> compiled, Object[] targets) {
+    protected <Query> Query buildEndpoint(MethodHandle factory, Object[] targets) {
         try {
-            final Constructor<Query> constructor = compiled.getConstructor(Object[].class);
-            AccessUtility.access(constructor);
-            return constructor.newInstance((Object) targets);
-        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            return (Query) (Object) factory.invokeExact(targets);
+        } catch (Throwable ex) {
             throw new EndpointLoaderException("Unable to create compiled endpoint for resource.", ex);
         }
     }
     
-    protected void writeCallerLink(GeneratorAdapter methodVisitor, String internalName, Method method, int current) {
-        methodVisitor.visitCode();
-        methodVisitor.visitVarInsn(ALOAD, 0);
-        methodVisitor.visitFieldInsn(GETFIELD, internalName, "targets", "[Ljava/lang/Object;");
-        methodVisitor.visitIntInsn(BIPUSH, current);
-        methodVisitor.visitInsn(AALOAD);
-        methodVisitor.visitTypeInsn(CHECKCAST, this.getInternalName(method.getDeclaringClass()));
-        this.loadArguments(methodVisitor, method);
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, this.getInternalName(method.getDeclaringClass()), method.getName(), this.getDescriptor(method), false);
-        methodVisitor.visitInsn(IRETURN);
-        methodVisitor.visitMaxs(method.getParameterTypes().length, 2);
-        methodVisitor.visitEnd();
+    /**
+     * Drops the cached endpoints, and any cached class bound to a resource method that no
+     * resource of this library or its ancestors still has, so the class can be unloaded.
+     */
+    @Override
+    protected void changed(Object added, Object removed, boolean last) {
+        instances.clear();
+        broadcasting.clear();
+        if (added == null) {
+            final Predicate<Method> missing = this.getMissing();
+            endpoints.keySet().removeIf(shape -> shape.refersTo(missing));
+            broadcasts.keySet().removeIf(shape -> shape.refersTo(missing));
+        }
+        super.changed(added, removed, last);
+    }
+    
+    /**
+     * Tests whether a resource method belongs to none of the resources available to this library.
+     */
+    protected Predicate<Method> getMissing() {
+        final Set<Class<?>> classes = new HashSet<>();
+        for (SimpleLibrary library = this; library != null; library = library.parent) {
+            for (final Object resource : library.resources) classes.add(resource.getClass());
+        }
+        final Map<Class<?>, Boolean> owners = new HashMap<>();
+        return method -> owners.computeIfAbsent(method.getDeclaringClass(), owner -> {
+            for (final Class<?> type : classes) {
+                if (owner.isAssignableFrom(type)) return false;
+            }
+            return true;
+        });
     }
     
     @Override
     public int empty() {
-        loader = new RuntimeClassLoader();
         endpoints.clear();
+        instances.clear();
+        broadcasts.clear();
+        broadcasting.clear();
+        lazies.clear();
         return super.empty();
     }
     
-    //region Internal Utilities
-    
-    protected void loadArguments(GeneratorAdapter methodVisitor, Method method) {
-        final Class<?>[] types = method.getParameterTypes();
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
-            final Class<?> type = types[i];
-            loadArgument(methodVisitor, type, i+1);
+    /**
+     * Links the call sites of one lazy endpoint, each against the library's resources
+     * at the time of its method's first call.
+     */
+    protected class Linker {
+        
+        protected final Class<?>[] types;
+        protected final Method[] methods;
+        
+        Linker(Class<?>[] types, Method[] methods) {
+            this.types = types;
+            this.methods = methods;
+        }
+        
+        CallSite link(int slot, MethodType type) {
+            final Method method = methods[slot];
+            final Class<?> query = getQuery(types, method);
+            final Endpoint endpoint = find(query, method);
+            if (endpoint == null && method.isDefault()) return new ConstantCallSite(createDefault(method).asType(type));
+            if (endpoint == null) {
+                if (metrics != null) metrics.unmatched(query, method);
+                return new ConstantCallSite(AccessUtility.unmatched(method));
+            }
+            MethodHandle handle = MethodHandles.insertArguments(createHandle(method, endpoint.method()), 0, endpoint.resource());
+            // Default methods are passed the endpoint as well, which a match has no use for.
+            if (method.isDefault()) handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            return new ConstantCallSite(handle.asType(type));
         }
-    }
     
-    protected void loadArgument(GeneratorAdapter methodVisitor, Class<?> type, int index) {
-        if (type == int.class) methodVisitor.visitVarInsn(ILOAD, index);
-        else if (type == byte.class) methodVisitor.visitVarInsn(ILOAD, index);
-        else if (type == char.class) methodVisitor.visitVarInsn(ILOAD, index);
-        else if (type == short.class) methodVisitor.visitVarInsn(ILOAD, index);
-        else if (type == boolean.class) methodVisitor.visitVarInsn(ILOAD, index);
-        else if (type == long.class) methodVisitor.visitVarInsn(LLOAD, index);
-        else if (type == float.class) methodVisitor.visitVarInsn(FLOAD, index);
-        else if (type == double.class) methodVisitor.visitVarInsn(DLOAD, index);
-        else methodVisitor.visitVarInsn(ALOAD, index);
     }
     
-    protected String getInternalName(final Class<?> cls) {
-        assert !cls.isArray();
-        if (cls.isHidden()) {
-            String name = cls.getName();
-            int index = name.indexOf('/');
-            return name.substring(0, index).replace('.', '/')
-                + "." + name.substring(index + 1);
-        } else {
-            return cls.getName().replace('.', '/');
+    protected record Shape(List<Class<?>> types, List<Method> methods) {
+        
+        Shape(Class<?> type, List<Method> methods) {
+            this(List.of(type), methods);
         }
+        
+        boolean refersTo(Predicate<Method> test) {
+            for (final Method method : methods) {
+                if (method != null && test.test(method)) return true;
+            }
+            return false;
+        }
+    
     }
     
-    protected String getDescriptor(final Method method) {
-        return getDescriptor(method.getReturnType(), method.getParameterTypes());
+    protected record Group(ClassLoader loader, String namespace) {
     }
     
-    protected String getDescriptor(final Class<?> ret, final Class<?>... params) {
-        final StringBuilder builder = new StringBuilder();
-        builder.append("(");
-        for (Class<?> type : params) {
-            builder.append(type.descriptorString());
-        }
-        builder
-            .append(")")
-            .append(ret.descriptorString());
-        return builder.toString();
+    protected record Bound(int version, Object endpoint) {
     }
-    //endregion
     
-    //region Class Loader
-    protected Class<?> loadClass(final String name, final byte[] bytes) {
-        return loader.loadClass(name, bytes);
+    protected record Precompiled(Class<?> type, MethodHandle factory, Method[] methods) {
     }
     
-    static class RuntimeClassLoader extends ClassLoader {
-        public Class<?> loadClass(String name, byte[] bytecode) {
-            return defineClass(name, bytecode, 0, bytecode.length);
+    /**
+     * Holds the host class for queries whose package is not open to Librarian.
+     * Classes are found through the query's loader first, and then Librarian's.
+     */
+    static class HostLoader extends ClassLoader {
+        
+        HostLoader(ClassLoader parent) {
+            super(parent);
+        }
+        
+        Class<?> define(String name, byte[] bytes) {
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+        
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return Class.forName(name, false, CompiledEndpointLibrary.class.getClassLoader());
         }
-    }
-    //endregion
     
+    }
+
 }
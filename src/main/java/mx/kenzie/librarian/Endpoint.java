@@ -2,8 +2,11 @@ package mx.kenzie.librarian;
 
 import mx.kenzie.librarian.error.EndpointInvocationException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 record Endpoint(Object resource, Method method) {
     
@@ -16,4 +19,25 @@ record Endpoint(Object resource, Method method) {
         }
     }
     
+    /**
+     * Creates a handle that takes the query method's arguments as an array, converting
+     * them and the result between the query method's types and this method's.
+     */
+    public MethodHandle spreader(final Method query) throws IllegalAccessException {
+        return this.spreader(query.getReturnType(), query.getParameterTypes());
+    }
+    
+    /**
+     * Creates a handle that takes arguments of these types as an array, converting them
+     * and the result between these types and this method's.
+     */
+    public MethodHandle spreader(final Class<?> returnType, final Class<?>[] parameters) throws IllegalAccessException {
+        MethodHandle handle = AccessUtility.unreflect(method);
+        if (!Modifier.isStatic(method.getModifiers())) handle = handle.bindTo(resource);
+        return handle
+            .asType(MethodType.methodType(returnType, parameters))
+            .asSpreader(Object[].class, parameters.length)
+            .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
 }
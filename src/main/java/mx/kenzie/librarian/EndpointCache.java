@@ -0,0 +1,142 @@
+package mx.kenzie.librarian;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A directory of compiled endpoint bytecode that persists between runs.
+ *
+ * Each entry is stored in its own file, named by a hash of the query interface and
+ * the resource methods it was bound to. The full key is kept inside the entry and
+ * checked on load, so a changed signature or a hash collision is treated as a miss
+ * and the entry is replaced.
+ *
+ * Entries are memory-mapped when read. Any entry written by a different version of
+ * the endpoint compiler, or which cannot be read, is ignored.
+ *
+ * @author Moderocky
+ */
+class EndpointCache {
+    
+    static final int MAGIC = 0x4C425259;
+    static final int VERSION = 6;
+    
+    protected final Path directory;
+    
+    EndpointCache(Path directory) {
+        this.directory = directory;
+    }
+    
+    byte[] load(final String key) {
+        final Path path = directory.resolve(getFileName(key));
+        if (!Files.isRegularFile(path)) return null;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            final byte[] stored = read(buffer);
+            if (stored == null) return null;
+            if (!key.equals(new String(stored, StandardCharsets.UTF_8))) return null;
+            return read(buffer);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+    
+    private static byte[] read(final ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return null;
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) return null;
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Writes the entry to a temporary file and moves it into place, so a concurrent
+     * reader sees either the old entry or the new one.
+     * Failing to write is not an error, since the endpoint has already been built.
+     */
+    void store(final String key, final byte[] bytecode) {
+        final byte[] stored = key.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(16 + stored.length + bytecode.length);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putInt(stored.length).put(stored);
+        buffer.putInt(bytecode.length).put(bytecode);
+        buffer.flip();
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, "endpoint", ".tmp");
+            try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(temporary, directory.resolve(getFileName(key)),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // The entry will be compiled again next time.
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    
+    static String getKey(Class<?> type, Method[] methods, Method[] matches, boolean[] direct, boolean instrumented) {
+        return getKey(new Class<?>[]{type}, methods, matches, direct, instrumented);
+    }
+    
+    static String getKey(Class<?>[] types, Method[] methods, Method[] matches, boolean[] direct, boolean instrumented) {
+        final StringBuilder builder = new StringBuilder(types[0].getName());
+        for (int i = 1; i < types.length; i++) builder.append(", ").append(types[i].getName());
+        if (instrumented) builder.append(" instrumented");
+        for (int i = 0; i < methods.length; i++) {
+            builder.append('\n').append(methods[i].getName()).append(AccessUtility.getDescriptor(methods[i]));
+            if (matches[i] == null) continue;
+            builder.append(direct[i] ? " -> " : " => ")
+                .append(matches[i].getDeclaringClass().getName()).append('.')
+                .append(matches[i].getName()).append(AccessUtility.getDescriptor(matches[i]));
+        }
+        return builder.toString();
+    }
+    
+    static String getKey(Class<?> type, Method[] methods, Reduction[] reductions, Method[][] matches, boolean[][] direct, boolean instrumented) {
+        final StringBuilder builder = new StringBuilder(type.getName()).append(" broadcast");
+        if (instrumented) builder.append(" instrumented");
+        for (int i = 0; i < methods.length; i++) {
+            builder.append('\n').append(methods[i].getName()).append(AccessUtility.getDescriptor(methods[i]))
+                .append(' ').append(reductions[i]);
+            if (matches[i] == null) {
+                builder.append(" default");
+                continue;
+            }
+            for (int j = 0; j < matches[i].length; j++) {
+                builder.append(direct[i][j] ? " -> " : " => ")
+                    .append(matches[i][j].getDeclaringClass().getName()).append('.')
+                    .append(matches[i][j].getName()).append(AccessUtility.getDescriptor(matches[i][j]));
+            }
+        }
+        return builder.toString();
+    }
+    
+    static String getFileName(String key) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 16; i++) builder.append(String.format("%02x", hash[i]));
+            return builder.append(".endpoint").toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,518 @@
+package mx.kenzie.librarian;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Writes the bytecode of a single compiled endpoint class.
+ *
+ * This is the only part of the library that touches ASM, so a library that
+ * finds precompiled endpoints for all its queries never needs ASM at runtime.
+ *
+ * Each bound resource is held in its own final field, filled in by the
+ * constructor from the targets array in the order the links were written.
+ *
+ * An instrumented endpoint also takes a counter for every query method, which
+ * follows that method's target in the array. Each call is timed into its counter,
+ * and calls that throw or reach an unmatched method are counted as failures.
+ *
+ * Resource methods are called through invokedynamic call sites, which the class's own
+ * bootstrap method links by passing the index of the site, in the order they were written,
+ * to the link handle held first in the class data. The library links the sites of normal
+ * endpoints to the matched methods themselves, so once linked a call costs the same as
+ * an invoke instruction, however the method is declared. Any other handles in the class
+ * data follow the link handle.
+ *
+ * Every bridge method the queries need, where a super-interface declares a query method with
+ * a less specific return type, is written to call the query method on the endpoint itself.
+ *
+ * Classes are written with stack map frames, since broadcast methods branch. Those
+ * branches only merge values of a single type, so no class ever needs to be loaded to
+ * find a common super-type.
+ *
+ * @author Moderocky
+ */
+class EndpointCompiler {
+    
+    private static final Handle CLASS_DATA = new Handle(H_INVOKESTATIC, "java/lang/invoke/MethodHandles", "classDataAt",
+        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;", false);
+    
+    private static final String COUNTER = "mx/kenzie/librarian/EndpointCounter";
+    private static final String BOOTSTRAP = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;I)Ljava/lang/invoke/CallSite;";
+    
+    protected final String internalName;
+    protected final Class<?>[] types;
+    protected final ClassWriter writer;
+    protected final MethodVisitor constructor;
+    protected final boolean instrumented;
+    protected int current, handles = 1, links;
+    
+    EndpointCompiler(String internalName, Class<?> type, boolean instrumented) {
+        this(internalName, new Class<?>[]{type}, instrumented);
+    }
+    
+    /**
+     * Creates a compiler for a class implementing all of the queries, which must share a package.
+     */
+    EndpointCompiler(String internalName, Class<?>[] types, boolean instrumented) {
+        this.internalName = internalName;
+        this.types = types;
+        this.instrumented = instrumented;
+        this.writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String first, String second) {
+                // Branches only ever meet with values of the query method's own types.
+                return "java/lang/Object";
+            }
+        };
+        writer.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER,
+            internalName, null, "java/lang/Object",
+            Arrays.stream(types).map(EndpointCompiler::getInternalName).toArray(String[]::new));
+        this.constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    }
+    
+    /**
+     * Compiles a class with a single static method, {@code lookup()}, which returns
+     * a full-privilege lookup in the class. Endpoints can be defined with this
+     * when the query interface's own package is not open to Librarian.
+     */
+    static byte[] compileHost(String internalName) {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, "java/lang/Object", null);
+        final MethodVisitor method = writer.visitMethod(ACC_PUBLIC | ACC_STATIC, "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", null, null);
+        method.visitCode();
+        method.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;", false);
+        method.visitInsn(ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+    
+    byte[] toByteArray() {
+        this.writeBridges();
+        if (links > 0) this.writeBootstrap();
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(4, 2);
+        constructor.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+    
+    /**
+     * Writes a query method that calls the resource method on its typed target field.
+     */
+    void writeCallerLink(Method method, Method match) {
+        final String owner = getInternalName(match.getDeclaringClass());
+        final String field = this.writeTarget(owner);
+        final String counter = instrumented ? this.writeTarget(COUNTER) : null;
+        final GeneratorAdapter methodVisitor = this.implement(method);
+        methodVisitor.visitCode();
+        final Timer timer = this.startTimer(methodVisitor);
+        this.invokeMatch(methodVisitor, method, match, field);
+        this.adapt(methodVisitor, match.getReturnType(), method.getReturnType());
+        this.stopTimer(methodVisitor, counter, timer);
+        methodVisitor.returnValue();
+        this.catchTimer(methodVisitor, counter, timer);
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Writes a query method that passes its target and arguments to the next method handle
+     * held in the class data. The handle must take the target as an object, followed by
+     * the query method's own parameter types.
+     */
+    void writeHandleLink(Method method) {
+        final String field = this.writeTarget("java/lang/Object");
+        final String counter = instrumented ? this.writeTarget(COUNTER) : null;
+        final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+        parameters[0] = Object.class;
+        System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+        final GeneratorAdapter methodVisitor = this.implement(method);
+        methodVisitor.visitCode();
+        final Timer timer = this.startTimer(methodVisitor);
+        methodVisitor.visitLdcInsn(new ConstantDynamic("_", "Ljava/lang/invoke/MethodHandle;", CLASS_DATA, handles++));
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitFieldInsn(GETFIELD, internalName, field, "Ljava/lang/Object;");
+        methodVisitor.loadArgs();
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", getDescriptor(method.getReturnType(), parameters), false);
+        this.stopTimer(methodVisitor, counter, timer);
+        methodVisitor.returnValue();
+        this.catchTimer(methodVisitor, counter, timer);
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Writes a query method that passes its arguments to an invokedynamic call site of
+     * the query method's own type, which the link handle may link to any target.
+     * A default method's site also takes the endpoint first, as an object.
+     */
+    void writeDynamicLink(Method method) {
+        final String counter = instrumented ? this.writeTarget(COUNTER) : null;
+        final GeneratorAdapter methodVisitor = this.implement(method);
+        methodVisitor.visitCode();
+        final Timer timer = this.startTimer(methodVisitor);
+        String descriptor = getDescriptor(method);
+        if (method.isDefault()) {
+            // The site may fall back to the interface's own implementation, which needs the endpoint.
+            methodVisitor.loadThis();
+            descriptor = "(Ljava/lang/Object;" + descriptor.substring(1);
+        }
+        methodVisitor.loadArgs();
+        methodVisitor.visitInvokeDynamicInsn(method.getName(), descriptor, this.getBootstrap(), links++);
+        this.stopTimer(methodVisitor, counter, timer);
+        methodVisitor.returnValue();
+        this.catchTimer(methodVisitor, counter, timer);
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Calls the resource method through an invokedynamic call site, passing the target from its
+     * field unless the method is static. The site takes the resource method's own types, with
+     * the target typed as the class or interface declaring it.
+     */
+    protected void invokeMatch(GeneratorAdapter methodVisitor, Method method, Method match, String field) {
+        final String owner = getInternalName(match.getDeclaringClass());
+        String descriptor = getDescriptor(match);
+        if (!Modifier.isStatic(match.getModifiers())) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, internalName, field, "L" + owner + ";");
+            descriptor = "(L" + owner + ";" + descriptor.substring(1);
+        }
+        this.loadArguments(methodVisitor, method, match);
+        methodVisitor.visitInvokeDynamicInsn(match.getName(), descriptor, this.getBootstrap(), links++);
+    }
+    
+    protected Handle getBootstrap() {
+        return new Handle(H_INVOKESTATIC, internalName, "$bootstrap", BOOTSTRAP, false);
+    }
+    
+    /**
+     * Writes the bootstrap method for the call sites, which hands over to the link handle.
+     */
+    protected void writeBootstrap() {
+        final MethodVisitor methodVisitor = writer.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, "$bootstrap", BOOTSTRAP, null, null);
+        methodVisitor.visitCode();
+        methodVisitor.visitLdcInsn(new ConstantDynamic("_", "Ljava/lang/invoke/MethodHandle;", CLASS_DATA, 0));
+        methodVisitor.visitVarInsn(ILOAD, 3);
+        methodVisitor.visitVarInsn(ALOAD, 2);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact",
+            "(ILjava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false);
+        methodVisitor.visitInsn(ARETURN);
+        methodVisitor.visitMaxs(3, 4);
+        methodVisitor.visitEnd();
+    }
+    
+    /**
+     * Writes the bridges of each query, unless another query already has the same one.
+     */
+    protected void writeBridges() {
+        final Set<String> written = new HashSet<>();
+        for (final Class<?> type : types) {
+            for (final Method bridge : AccessUtility.getBridges(type)) {
+                if (!written.add(bridge.getName() + getDescriptor(bridge))) continue;
+                for (final Method method : AccessUtility.getQueryMethods(type)) {
+                    if (!method.getName().equals(bridge.getName())) continue;
+                    if (Arrays.equals(method.getParameterTypes(), bridge.getParameterTypes())) this.writeBridge(bridge, method);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes a bridge that calls the query method, which returns a sub-type of the bridge's return type.
+     * The query method may be an unmatched default method that the class inherits.
+     */
+    protected void writeBridge(Method bridge, Method method) {
+        final GeneratorAdapter methodVisitor = new GeneratorAdapter(ACC_PUBLIC | ACC_BRIDGE | ACC_SYNTHETIC,
+            new org.objectweb.asm.commons.Method(bridge.getName(), getDescriptor(bridge)), null, null, writer);
+        methodVisitor.visitCode();
+        methodVisitor.loadThis();
+        methodVisitor.loadArgs();
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, internalName, method.getName(), getDescriptor(method), false);
+        methodVisitor.returnValue();
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Writes a query method that throws, for a query method that no resource could satisfy.
+     */
+    void writeUnmatched(Method method) {
+        final String counter = instrumented ? this.writeTarget(COUNTER) : null;
+        final GeneratorAdapter methodVisitor = this.implement(method);
+        methodVisitor.visitCode();
+        this.throwUnmatched(methodVisitor, method, counter);
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Writes a broadcast query method, which calls each of its matches in turn and reduces
+     * their results in a straight line of bytecode. Each match has its own target field,
+     * typed where it is called directly, and any others are called through the next
+     * method handles held in the class data, which must return the reduced type.
+     */
+    void writeBroadcast(Method method, Reduction reduction, Method[] matches, boolean[] direct) {
+        final Class<?> type = method.getReturnType();
+        final Class<?> element = BroadcastEndpoint.getElement(method, reduction);
+        final String[] fields = new String[matches.length];
+        for (int i = 0; i < matches.length; i++)
+            fields[i] = this.writeTarget(direct[i] ? getInternalName(matches[i].getDeclaringClass()) : "java/lang/Object");
+        final String counter = instrumented ? this.writeTarget(COUNTER) : null;
+        final GeneratorAdapter methodVisitor = this.implement(method);
+        methodVisitor.visitCode();
+        if (reduction == Reduction.FIRST_NON_NULL && type.isPrimitive() && matches.length == 0) {
+            this.throwUnmatched(methodVisitor, method, counter);
+            methodVisitor.endMethod();
+            return;
+        }
+        final Timer timer = this.startTimer(methodVisitor);
+        final Label end = methodVisitor.newLabel();
+        switch (reduction) {
+            case NONE -> {
+                for (int i = 0; i < matches.length; i++)
+                    this.writeCall(methodVisitor, method, element, matches[i], fields[i], direct[i]);
+            }
+            case ARRAY -> {
+                methodVisitor.push(matches.length);
+                methodVisitor.newArray(Type.getType(element));
+                for (int i = 0; i < matches.length; i++) {
+                    methodVisitor.dup();
+                    methodVisitor.push(i);
+                    this.writeCall(methodVisitor, method, element, matches[i], fields[i], direct[i]);
+                    methodVisitor.arrayStore(Type.getType(element));
+                }
+            }
+            case SUM -> {
+                if (type == long.class) methodVisitor.push(0L);
+                else if (type == float.class) methodVisitor.push(0F);
+                else if (type == double.class) methodVisitor.push(0D);
+                else methodVisitor.push(0);
+                for (int i = 0; i < matches.length; i++) {
+                    this.writeCall(methodVisitor, method, element, matches[i], fields[i], direct[i]);
+                    methodVisitor.math(GeneratorAdapter.ADD, Type.getType(type));
+                }
+            }
+            case ANY, ALL -> {
+                final boolean any = reduction == Reduction.ANY;
+                final Label decided = methodVisitor.newLabel();
+                for (int i = 0; i < matches.length; i++) {
+                    this.writeCall(methodVisitor, method, element, matches[i], fields[i], direct[i]);
+                    methodVisitor.ifZCmp(any ? GeneratorAdapter.NE : GeneratorAdapter.EQ, decided);
+                }
+                methodVisitor.push(!any);
+                methodVisitor.goTo(end);
+                methodVisitor.mark(decided);
+                methodVisitor.push(any);
+            }
+            case FIRST_NON_NULL -> {
+                if (type.isPrimitive()) {
+                    this.writeCall(methodVisitor, method, element, matches[0], fields[0], direct[0]);
+                    break;
+                }
+                for (int i = 0; i < matches.length; i++) {
+                    this.writeCall(methodVisitor, method, element, matches[i], fields[i], direct[i]);
+                    // Every branch to the end must leave the same type on the stack.
+                    if (direct[i] && matches[i].getReturnType() != type) methodVisitor.checkCast(Type.getType(type));
+                    methodVisitor.dup();
+                    methodVisitor.ifNonNull(end);
+                    methodVisitor.pop();
+                }
+                methodVisitor.visitInsn(ACONST_NULL);
+            }
+        }
+        methodVisitor.mark(end);
+        this.stopTimer(methodVisitor, counter, timer);
+        methodVisitor.returnValue();
+        this.catchTimer(methodVisitor, counter, timer);
+        methodVisitor.endMethod();
+    }
+    
+    /**
+     * Calls one match of a broadcast, leaving its result on the stack as the reduced type.
+     */
+    protected void writeCall(GeneratorAdapter methodVisitor, Method method, Class<?> element, Method match, String field, boolean direct) {
+        if (!direct) {
+            final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+            parameters[0] = Object.class;
+            System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+            methodVisitor.visitLdcInsn(new ConstantDynamic("_", "Ljava/lang/invoke/MethodHandle;", CLASS_DATA, handles++));
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, internalName, field, "Ljava/lang/Object;");
+            methodVisitor.loadArgs();
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", getDescriptor(element, parameters), false);
+            return;
+        }
+        this.invokeMatch(methodVisitor, method, match, field);
+        this.adapt(methodVisitor, match.getReturnType(), element);
+    }
+    
+    protected void throwUnmatched(GeneratorAdapter methodVisitor, Method method, String counter) {
+        if (counter != null) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, internalName, counter, "L" + COUNTER + ";");
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, COUNTER, "fail", "()V", false);
+        }
+        methodVisitor.throwException(Type.getObjectType("mx/kenzie/librarian/error/UnmatchedEndpointException"),
+            "Unmatched library method: '" + method.getName() + "'");
+    }
+    
+    /**
+     * Starts timing the call, and opens a range of code whose exceptions
+     * {@link #catchTimer(GeneratorAdapter, String, Timer)} records and rethrows.
+     */
+    protected Timer startTimer(GeneratorAdapter methodVisitor) {
+        if (!instrumented) return null;
+        final Timer timer = new Timer(methodVisitor.newLocal(Type.LONG_TYPE),
+            methodVisitor.newLabel(), methodVisitor.newLabel(), methodVisitor.newLabel());
+        methodVisitor.visitTryCatchBlock(timer.from(), timer.to(), timer.handler(), null);
+        methodVisitor.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+        methodVisitor.storeLocal(timer.start());
+        methodVisitor.mark(timer.from());
+        methodVisitor.visitInsn(NOP); // A broadcast with no matches would leave the range empty.
+        return timer;
+    }
+    
+    /**
+     * Records the time since the timer started. Any return value stays on the stack beneath.
+     */
+    protected void stopTimer(GeneratorAdapter methodVisitor, String counter, Timer timer) {
+        if (counter == null) return;
+        methodVisitor.mark(timer.to());
+        this.recordTime(methodVisitor, counter, timer);
+    }
+    
+    /**
+     * Writes the handler for anything thrown while the timer ran, which records the time,
+     * counts the call as a failure and rethrows. Must follow the method's return.
+     */
+    protected void catchTimer(GeneratorAdapter methodVisitor, String counter, Timer timer) {
+        if (counter == null) return;
+        methodVisitor.mark(timer.handler());
+        this.recordTime(methodVisitor, counter, timer);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitFieldInsn(GETFIELD, internalName, counter, "L" + COUNTER + ";");
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, COUNTER, "fail", "()V", false);
+        methodVisitor.throwException();
+    }
+    
+    protected void recordTime(GeneratorAdapter methodVisitor, String counter, Timer timer) {
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitFieldInsn(GETFIELD, internalName, counter, "L" + COUNTER + ";");
+        methodVisitor.visitMethodInsn(INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+        methodVisitor.loadLocal(timer.start());
+        methodVisitor.visitInsn(LSUB);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, COUNTER, "record", "(J)V", false);
+    }
+    
+    protected String writeTarget(String owner) {
+        final String field = "target" + current;
+        final FieldVisitor fieldVisitor = writer.visitField(ACC_PRIVATE | ACC_FINAL, field, "L" + owner + ";", null, null);
+        fieldVisitor.visitEnd();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitVarInsn(ALOAD, 1);
+        constructor.visitLdcInsn(current);
+        constructor.visitInsn(AALOAD);
+        if (!owner.equals("java/lang/Object")) constructor.visitTypeInsn(CHECKCAST, owner);
+        constructor.visitFieldInsn(PUTFIELD, internalName, field, "L" + owner + ";");
+        current++;
+        return field;
+    }
+    
+    protected GeneratorAdapter implement(Method method) {
+        return new GeneratorAdapter(
+            method.getModifiers() & ~ACC_ABSTRACT,
+            new org.objectweb.asm.commons.Method(method.getName(), getDescriptor(method)),
+            null, null, writer
+        );
+    }
+    
+    //region Internal Utilities
+    protected void loadArguments(GeneratorAdapter methodVisitor, Method method, Method match) {
+        final Class<?>[] types = method.getParameterTypes();
+        final Class<?>[] targets = match.getParameterTypes();
+        int slot = 1;
+        for (int i = 0; i < types.length; i++) {
+            final Class<?> type = types[i];
+            loadArgument(methodVisitor, type, slot);
+            this.adapt(methodVisitor, type, targets[i]);
+            slot += (type == long.class || type == double.class) ? 2 : 1;
+        }
+    }
+    
+    protected void loadArgument(GeneratorAdapter methodVisitor, Class<?> type, int index) {
+        methodVisitor.visitVarInsn(Type.getType(type).getOpcode(ILOAD), index);
+    }
+    
+    /**
+     * Converts the value on top of the stack for use as a different type. Primitives are boxed
+     * with their wrapper's valueOf method, and wrappers are unboxed and then widened if needed.
+     * Reference types converted to a super-type need no instruction. Any other reference is cast,
+     * which only happens where a query gives a type variable's parameter a more specific type.
+     */
+    protected void adapt(GeneratorAdapter methodVisitor, Class<?> from, Class<?> to) {
+        if (from == to) return;
+        if (to == void.class) {
+            if (from == long.class || from == double.class) methodVisitor.visitInsn(POP2);
+            else methodVisitor.visitInsn(POP);
+        } else if (from.isPrimitive() && to.isPrimitive()) methodVisitor.cast(Type.getType(from), Type.getType(to));
+        else if (from.isPrimitive()) methodVisitor.valueOf(Type.getType(from));
+        else if (to.isPrimitive()) {
+            final Class<?> primitive = AccessUtility.unwrap(from);
+            if (primitive == null) methodVisitor.unbox(Type.getType(to));
+            else {
+                methodVisitor.unbox(Type.getType(primitive));
+                if (primitive != to) methodVisitor.cast(Type.getType(primitive), Type.getType(to));
+            }
+        } else if (!to.isAssignableFrom(from)) methodVisitor.checkCast(Type.getType(to));
+    }
+    
+    static String getInternalName(final Class<?> cls) {
+        assert !cls.isArray();
+        if (cls.isHidden()) {
+            String name = cls.getName();
+            int index = name.indexOf('/');
+            return name.substring(0, index).replace('.', '/')
+                + "." + name.substring(index + 1);
+        } else {
+            return cls.getName().replace('.', '/');
+        }
+    }
+    
+    static String getDescriptor(final Method method) {
+        return getDescriptor(method.getReturnType(), method.getParameterTypes());
+    }
+    
+    static String getDescriptor(final Class<?> ret, final Class<?>... params) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("(");
+        for (Class<?> type : params) {
+            builder.append(type.descriptorString());
+        }
+        builder
+            .append(")")
+            .append(ret.descriptorString());
+        return builder.toString();
+    }
+    //endregion
+    
+    protected record Timer(int start, Label from, Label to, Label handler) {
+    }
+
+}
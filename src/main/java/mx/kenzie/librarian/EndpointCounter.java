@@ -0,0 +1,57 @@
+package mx.kenzie.librarian;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls to a single query method and how long they took.
+ *
+ * Every part is a striped {@link LongAdder}, so endpoints called from many threads
+ * do not contend on the counter. Call times are kept in a histogram of powers of two,
+ * where bucket {@code n} holds calls that took from {@code 2^n} up to {@code 2^(n+1)}
+ * nanoseconds.
+ *
+ * Compiled endpoints call {@link #record(long)} from generated code,
+ * so this must stay public.
+ *
+ * @author Moderocky
+ */
+public final class EndpointCounter {
+    
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder time = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[64];
+    
+    public EndpointCounter() {
+        for (int i = 0; i < histogram.length; i++) histogram[i] = new LongAdder();
+    }
+    
+    public void record(long nanos) {
+        this.calls.increment();
+        this.time.add(nanos);
+        this.histogram[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+    }
+    
+    public void fail() {
+        this.failures.increment();
+    }
+    
+    public long getCalls() {
+        return calls.sum();
+    }
+    
+    public long getFailures() {
+        return failures.sum();
+    }
+    
+    public long getTotalTime() {
+        return time.sum();
+    }
+    
+    public long[] getHistogram() {
+        final long[] buckets = new long[histogram.length];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = histogram[i].sum();
+        return buckets;
+    }
+
+}
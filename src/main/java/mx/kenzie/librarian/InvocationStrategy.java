@@ -0,0 +1,22 @@
+package mx.kenzie.librarian;
+
+/**
+ * The way a library's query endpoints call through to resource methods.
+ *
+ * @author Moderocky
+ * @see Library#create(InvocationStrategy)
+ */
+public enum InvocationStrategy {
+    /**
+     * Proxy endpoints that call resource methods with core reflection.
+     */
+    REFLECTION,
+    /**
+     * Proxy endpoints that call method handles bound to their resources when the query is made.
+     */
+    METHOD_HANDLE,
+    /**
+     * Endpoints compiled to bytecode, see {@link CompiledEndpointLibrary}.
+     */
+    COMPILED
+}
@@ -0,0 +1,84 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * The invocation handler behind lazily bound proxy endpoints.
+ *
+ * No query method is matched when the endpoint is created. Each slot is filled the first
+ * time its method is called, against the resources registered at that moment, and is
+ * then called in the same way as a slot of an eagerly bound endpoint. Binding therefore
+ * costs nothing for methods that are never called.
+ *
+ * Filled slots are read without locking; a slot that looks empty is checked again,
+ * and filled if need be, under the handler's lock.
+ *
+ * @author Moderocky
+ */
+class LazyEndpoint extends ProxyEndpoint {
+    
+    protected final SignatureIndex index;
+    protected final MethodMatcher matcher;
+    protected final InvocationStrategy strategy;
+    protected final LibraryMetrics metrics;
+    protected final AsyncDispatcher async;
+    protected final boolean[] resolved;
+    
+    LazyEndpoint(Class<?> query, Method[] methods, EndpointCounter[] counters, SignatureIndex index, MethodMatcher matcher,
+                 InvocationStrategy strategy, LibraryMetrics metrics, AsyncDispatcher async) {
+        super(query, methods, counters, false);
+        this.index = index;
+        this.matcher = matcher;
+        this.strategy = strategy;
+        this.metrics = metrics;
+        this.async = async;
+        this.resolved = new boolean[methods.length];
+    }
+    
+    static <Query> Query create(Class<? extends Query> type, SignatureIndex index, MethodMatcher matcher, InvocationStrategy strategy,
+                                LibraryMetrics metrics, AsyncDispatcher async) {
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final EndpointCounter[] counters = metrics != null ? new EndpointCounter[methods.length] : null;
+        for (int i = 0; counters != null && i < counters.length; i++) counters[i] = metrics.counter(type, methods[i]);
+        final LazyEndpoint handler = new LazyEndpoint(type, methods, counters, index, matcher, strategy, metrics, async);
+        return (Query) Proxy.newProxyInstance(LazyEndpoint.class.getClassLoader(), new Class[]{type}, handler);
+    }
+    
+    @Override
+    protected boolean isMatched(int slot) {
+        return super.isMatched(slot) || this.resolve(slot);
+    }
+    
+    /**
+     * Binds the slot the first time it is called.
+     *
+     * @return whether the slot's method has a match
+     */
+    protected synchronized boolean resolve(int slot) {
+        if (resolved[slot]) return super.isMatched(slot);
+        this.resolved[slot] = true;
+        final Method method = methods[slot];
+        final Endpoint endpoint = ProxyEndpoint.find(index, matcher, async, query, method);
+        if (endpoint == null) {
+            if (metrics != null && !method.isDefault()) metrics.unmatched(query, method);
+            return false;
+        }
+        if (async != null && AsyncDispatcher.isAsync(method, endpoint.method())) {
+            this.handles[slot] = async.createSpreader(method, endpoint);
+            return true;
+        }
+        AccessUtility.access(endpoint.method());
+        if (strategy != InvocationStrategy.REFLECTION || !isReflective(method, endpoint.method())) {
+            try {
+                this.handles[slot] = endpoint.spreader(method);
+                return true;
+            } catch (IllegalAccessException ex) {
+                // Falls back to reflection for this method.
+            }
+        }
+        this.endpoints[slot] = endpoint;
+        return true;
+    }
+
+}
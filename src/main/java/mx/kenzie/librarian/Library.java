@@ -1,6 +1,9 @@
 package mx.kenzie.librarian;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Executor;
 
 /**
  * A library that holds resources and handles queries for them.
@@ -11,8 +14,30 @@ import java.lang.reflect.Method;
  */
 public interface Library<Resource> {
     
+    /**
+     * Creates a simple library whose query endpoints use the given strategy.
+     */
+    static Library<Object> create(InvocationStrategy strategy) {
+        return switch (strategy) {
+            case COMPILED -> new CompiledEndpointLibrary();
+            default -> new SimpleLibrary(strategy);
+        };
+    }
+    
     boolean register(Resource resource);
     
+    /**
+     * Registers many resources at once. Libraries that can do so apply them as a single
+     * change, so derived state such as cached endpoints is only invalidated once.
+     *
+     * @return true if any resource was registered
+     */
+    default boolean registerAll(Collection<? extends Resource> resources) {
+        boolean changed = false;
+        for (final Resource resource : resources) changed |= this.register(resource);
+        return changed;
+    }
+    
     boolean unregister(Resource resource);
     
     boolean unregisterAll(Class<? extends Resource> type);
@@ -34,6 +59,63 @@ public interface Library<Resource> {
     <Query extends Object>
     Query lookFor(Class<? extends Query> type);
     
+    /**
+     * Finds an endpoint for each query, in the order given. Libraries that can do so
+     * bind them together, which may be faster than looking for each in turn.
+     */
+    default Object[] lookForAll(Class<?>... types) {
+        final Object[] endpoints = new Object[types.length];
+        for (int i = 0; i < types.length; i++) endpoints[i] = this.lookFor(types[i]);
+        return endpoints;
+    }
+    
+    /**
+     * Finds an endpoint for the query that follows changes to the library's resources,
+     * rather than keeping those it was bound to. Libraries that cannot do this return
+     * a normal endpoint.
+     */
+    default <Query> Query lookForLive(Class<? extends Query> type) {
+        return this.lookFor(type);
+    }
+    
+    /**
+     * Finds an endpoint whose query methods call every matching resource, rather than
+     * the first, and combine the results as set by their {@link Broadcast} reductions.
+     * Calls are made in registration order on the calling thread.
+     */
+    default <Query> Query lookForBroadcast(Class<? extends Query> type) {
+        return this.lookForBroadcast(type, null);
+    }
+    
+    /**
+     * Finds a broadcast endpoint whose calls to each matching resource are made in parallel
+     * on the given executor, for resources that may be slow to respond. The results are
+     * reduced in registration order once every call has finished.
+     * A null executor makes the calls in turn on the calling thread.
+     * By default, the library's current resources are matched structurally.
+     */
+    default <Query> Query lookForBroadcast(Class<? extends Query> type, Executor executor) {
+        return BroadcastEndpoint.create(type, this.createIndex(), MethodMatcher.STRUCTURAL, null, executor, false);
+    }
+    
+    /**
+     * Describes how the library would bind each method of the query, without binding it.
+     * By default, the library's current resources are matched structurally.
+     */
+    default BindingReport report(Class<?> type) {
+        final SignatureIndex index = this.createIndex();
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final Endpoint[] endpoints = new Endpoint[methods.length];
+        for (int i = 0; i < methods.length; i++) endpoints[i] = index.find(type, methods[i], MethodMatcher.STRUCTURAL);
+        return BindingReport.of(type, methods, endpoints);
+    }
+    
     Method lookForMethod(Class<?> returnType, String name, Class<?>... parameters);
     
+    private SignatureIndex createIndex() {
+        final SignatureIndex index = new SignatureIndex();
+        index.addAll(Arrays.asList(this.getResources()));
+        return index;
+    }
+
 }
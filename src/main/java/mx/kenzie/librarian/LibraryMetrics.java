@@ -0,0 +1,39 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.Method;
+
+/**
+ * Receives measurements from a library and its query endpoints.
+ *
+ * A library given no metrics records nothing, and its compiled endpoints
+ * contain no measurement code at all.
+ *
+ * Counters are requested once for each query method when an endpoint is bound,
+ * and are then updated by the endpoint on every call. They should be shared
+ * between bindings of the same method so the counts accumulate.
+ *
+ * @author Moderocky
+ * @see RecordingMetrics for a basic implementation.
+ */
+public interface LibraryMetrics {
+    
+    /**
+     * Provides the counter for calls to this query method.
+     */
+    EndpointCounter counter(Class<?> query, Method method);
+    
+    /**
+     * Reports that an endpoint was bound for the query.
+     *
+     * @param nanos  the time taken to provide the endpoint
+     * @param cached whether an existing endpoint was re-used
+     */
+    void bound(Class<?> query, long nanos, boolean cached);
+    
+    /**
+     * Reports that no resource could satisfy this query method when the endpoint was bound.
+     * Calls to it will fail with an {@link mx.kenzie.librarian.error.UnmatchedEndpointException}.
+     */
+    void unmatched(Class<?> query, Method method);
+
+}
@@ -0,0 +1,26 @@
+package mx.kenzie.librarian;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a query interface whose endpoint should be generated at compile time.
+ *
+ * When the {@code librarian-processor} annotation processor is on the compiler's
+ * processor path, it writes an implementation named {@code <Query>$LibraryEndpoint}
+ * into the same package. The {@link CompiledEndpointLibrary} uses this in place of
+ * generating a class at runtime, so no bytecode is written or defined on first query.
+ *
+ * Queries without this are still compiled at runtime as normal.
+ *
+ * @author Moderocky
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface LibraryQuery {
+
+}
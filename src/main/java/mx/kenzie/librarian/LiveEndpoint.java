@@ -0,0 +1,221 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.EndpointLoaderException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * The call sites behind a live endpoint, one for each query method.
+ *
+ * Each site's target calls the matching resource method, or throws if there is no match.
+ * A default method's site takes the endpoint first, and calls the interface's own
+ * implementation when there is no match.
+ * The resource itself is not bound into the target but read from a slot on each call,
+ * so when a resource is replaced by another of the same class only its slot is written.
+ * A site is only retargeted when the method it calls changes, and when a single resource
+ * is registered or removed, only the query methods it could affect are matched again.
+ * Endpoints call through the sites' invokers, which the JIT treats as constants and
+ * inlines until a site is retargeted.
+ *
+ * @author Moderocky
+ */
+class LiveEndpoint {
+    
+    private static final VarHandle RECEIVERS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final MethodHandle REQUIRE, ENDPOINT;
+    private static final ClassValue<Set<String>> NAMES = new ClassValue<>() {
+        @Override
+        protected Set<String> computeValue(Class<?> type) {
+            final Set<String> names = new HashSet<>();
+            for (final Method method : AccessUtility.getMethods(type)) names.add(method.getName());
+            return Set.copyOf(names);
+        }
+    };
+    
+    static {
+        try {
+            REQUIRE = MethodHandles.lookup().findStatic(LiveEndpoint.class, "require",
+                MethodType.methodType(Object.class, Object.class, String.class));
+            ENDPOINT = MethodHandles.lookup().findGetter(LiveEndpoint.class, "endpoint", Object.class);
+        } catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    final Class<?> query;
+    final Method[] methods;
+    final MutableCallSite[] sites;
+    final Method[] matches;
+    final Object[] receivers;
+    final Object[] resources;
+    Object endpoint;
+    
+    LiveEndpoint(Class<?> query, Method[] methods) {
+        this.query = query;
+        this.methods = methods;
+        this.sites = new MutableCallSite[methods.length];
+        this.matches = new Method[methods.length];
+        this.receivers = new Object[methods.length];
+        this.resources = new Object[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            MethodType type = MethodType.methodType(methods[i].getReturnType(), methods[i].getParameterTypes());
+            if (methods[i].isDefault()) type = type.insertParameterTypes(0, Object.class);
+            this.sites[i] = new MutableCallSite(type);
+            this.sites[i].setTarget(this.createUnmatched(i));
+        }
+    }
+    
+    /**
+     * Matches every query method against the index.
+     *
+     * @return the number of sites that were retargeted
+     */
+    int bind(SignatureIndex index, MethodMatcher matcher, LibraryMetrics metrics) {
+        return this.bind(index, matcher, metrics, slot -> true);
+    }
+    
+    /**
+     * Updates the query methods a newly registered resource could be chosen for. Since new
+     * resources come last, these are the methods with no match or only an adapted one,
+     * and which the resource has a method with one of their names for.
+     */
+    int added(SignatureIndex index, MethodMatcher matcher, LibraryMetrics metrics, Object resource) {
+        final Set<String> names = NAMES.get(resource.getClass());
+        return this.bind(index, matcher, metrics, slot -> !this.isExact(slot, matcher) && this.isNamed(slot, matcher, names));
+    }
+    
+    /**
+     * Updates the query methods that were bound to a removed resource.
+     * Removing any other resource cannot change which one is chosen.
+     */
+    int removed(SignatureIndex index, MethodMatcher matcher, LibraryMetrics metrics, Object resource) {
+        return this.bind(index, matcher, metrics, slot -> resources[slot] == resource);
+    }
+    
+    protected int bind(SignatureIndex index, MethodMatcher matcher, LibraryMetrics metrics, IntPredicate affected) {
+        final List<MutableCallSite> changed = new ArrayList<>();
+        final Object[] pending = new Object[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            if (!affected.test(i)) continue;
+            final Endpoint endpoint = index.find(query, methods[i], matcher);
+            if (endpoint == null && metrics != null && !methods[i].isDefault()) metrics.unmatched(query, methods[i]);
+            final Method match = endpoint != null ? endpoint.method() : null;
+            final Object receiver = match != null && !Modifier.isStatic(match.getModifiers()) ? endpoint.resource() : null;
+            this.resources[i] = endpoint != null ? endpoint.resource() : null;
+            // An instance match that is lost keeps its target, which throws once the slot is empty.
+            if (match == null ? matches[i] == null || !methods[i].isDefault() && !Modifier.isStatic(matches[i].getModifiers()) : match.equals(matches[i])) {
+                RECEIVERS.setRelease(receivers, i, receiver);
+                continue;
+            }
+            // The slot is emptied while the target changes, so the old target never sees the new receiver.
+            RECEIVERS.setRelease(receivers, i, null);
+            this.matches[i] = match;
+            this.sites[i].setTarget(match == null ? this.createUnmatched(i) : this.createTarget(i, match));
+            changed.add(sites[i]);
+            pending[i] = receiver;
+        }
+        if (changed.isEmpty()) return 0;
+        MutableCallSite.syncAll(changed.toArray(new MutableCallSite[0]));
+        for (int i = 0; i < methods.length; i++) {
+            if (pending[i] != null) RECEIVERS.setRelease(receivers, i, pending[i]);
+        }
+        return changed.size();
+    }
+    
+    /**
+     * Whether the slot is bound to a resource method of the query method's own name that the matcher
+     * finds exact, which no later resource can take the place of.
+     */
+    protected boolean isExact(int slot, MethodMatcher matcher) {
+        final Method match = matches[slot];
+        if (match == null || resources[slot] == null || !match.getName().equals(methods[slot].getName())) return false;
+        return matcher.score(methods[slot].getReturnType(), methods[slot].getParameterTypes(), match) == 0;
+    }
+    
+    protected boolean isNamed(int slot, MethodMatcher matcher, Set<String> names) {
+        for (final String name : matcher.getNames(methods[slot])) {
+            if (names.contains(name)) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Creates a target calling the resource method, with the receiver read from its slot
+     * and checked, since an empty slot means the method no longer has a match.
+     */
+    protected MethodHandle createTarget(int slot, Method match) {
+        final Method method = methods[slot];
+        final MethodHandle target;
+        try {
+            final MethodHandle handle = AccessUtility.unreflect(match);
+            if (Modifier.isStatic(match.getModifiers())) {
+                target = handle.asType(MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
+            } else {
+                final Class<?>[] parameters = new Class<?>[method.getParameterCount() + 1];
+                parameters[0] = Object.class;
+                System.arraycopy(method.getParameterTypes(), 0, parameters, 1, method.getParameterCount());
+                final MethodHandle receiver = MethodHandles.filterReturnValue(
+                    MethodHandles.insertArguments(RECEIVERS.toMethodHandle(VarHandle.AccessMode.GET_ACQUIRE), 0, receivers, slot),
+                    MethodHandles.insertArguments(REQUIRE, 1, method.getName()));
+                target = MethodHandles.foldArguments(handle.asType(MethodType.methodType(method.getReturnType(), parameters)), receiver);
+            }
+        } catch (IllegalAccessException ex) {
+            throw new EndpointLoaderException("Unable to access resource method '" + match.getName() + "'.", ex);
+        }
+        return method.isDefault() ? MethodHandles.dropArguments(target, 0, Object.class) : target;
+    }
+    
+    /**
+     * Creates the target for a site with no match, which throws, or for a default method,
+     * calls the interface's own implementation.
+     */
+    protected MethodHandle createUnmatched(int slot) {
+        final Method method = methods[slot];
+        if (!method.isDefault()) return AccessUtility.unmatched(method);
+        return CompiledEndpointLibrary.createDefault(method).asType(sites[slot].type());
+    }
+    
+    private static Object require(Object resource, String name) {
+        if (resource == null) throw new UnmatchedEndpointException("Unmatched library method: '" + name + "'");
+        return resource;
+    }
+    
+    /**
+     * Creates the invoker for a site, taking the endpoint's target field as an ignored first parameter.
+     */
+    MethodHandle getInvoker(int slot) {
+        return MethodHandles.dropArguments(this.getDynamicInvoker(slot), 0, Object.class);
+    }
+    
+    /**
+     * Creates the invoker for a site that takes its arguments as an array.
+     */
+    MethodHandle getSpreader(int slot) {
+        return this.getDynamicInvoker(slot)
+            .asSpreader(Object[].class, methods[slot].getParameterCount())
+            .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+    
+    /**
+     * Creates an invoker for a site taking the query method's own parameters,
+     * which passes a default method's site this endpoint.
+     */
+    protected MethodHandle getDynamicInvoker(int slot) {
+        final MethodHandle invoker = sites[slot].dynamicInvoker();
+        if (!methods[slot].isDefault()) return invoker;
+        return MethodHandles.foldArguments(invoker, ENDPOINT.bindTo(this));
+    }
+
+}
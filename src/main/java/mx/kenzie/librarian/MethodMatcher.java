@@ -0,0 +1,67 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Decides which resource methods a query method can be bound to, and ranks them.
+ *
+ * Libraries look at every resource method with one of the query method's names, and bind
+ * the one with the lowest score. A match found under an alias has the alias's position
+ * in the list of names added to its score. Where scores are equal, the match found first
+ * is chosen: under the query method's own name before its aliases, and from the earliest
+ * registered resource.
+ *
+ * The conversions a match needs are made by the endpoint itself, so compiled endpoints
+ * call an adapted match as cheaply as an exact one.
+ *
+ * @author Moderocky
+ */
+public interface MethodMatcher {
+    
+    /**
+     * The score of a resource method that cannot be used.
+     */
+    int NO_MATCH = -1;
+    
+    /**
+     * Matches only methods with exactly the query method's parameter types,
+     * and a return type that can be assigned to the query method's.
+     */
+    MethodMatcher EXACT = (returnType, parameters, candidate) -> {
+        if (!Arrays.equals(parameters, candidate.getParameterTypes())) return NO_MATCH;
+        return returnType.isAssignableFrom(candidate.getReturnType()) ? 0 : NO_MATCH;
+    };
+    
+    /**
+     * Matches methods that arguments and results can be converted for, by assignment,
+     * primitive widening, boxing or unboxing. Each parameter and the result add to the score:
+     * nothing if the types are the same, one for assignment or widening, two for boxing and
+     * three for unboxing, which fails for null. A query method returning void may be matched
+     * to a method with a result, which is ignored, for a score of one.
+     * This is the default for every library.
+     */
+    MethodMatcher STRUCTURAL = AccessUtility::getCost;
+    
+    /**
+     * Scores how well a resource method can stand in for a query method with this return
+     * type and these parameters. Lower scores are better and zero is an exact match.
+     *
+     * @return the score, or {@link #NO_MATCH} if calls cannot be passed on to the resource method
+     */
+    int score(Class<?> returnType, Class<?>[] parameters, Method candidate);
+    
+    /**
+     * Gets the names a matching resource method may have, with the query method's own name first.
+     * By default, these are followed by the names from its {@link Alias} annotation.
+     */
+    default String[] getNames(Method method) {
+        final Alias alias = method.getAnnotation(Alias.class);
+        if (alias == null) return new String[]{method.getName()};
+        final String[] names = new String[alias.value().length + 1];
+        names[0] = method.getName();
+        System.arraycopy(alias.value(), 0, names, 1, alias.value().length);
+        return names;
+    }
+
+}
@@ -0,0 +1,249 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.EndpointInvocationException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The invocation handler behind proxy query endpoints.
+ *
+ * Each query method has a slot holding its bound endpoint. The proxy hands over its
+ * own copies of the method objects, so each is resolved to its slot the first time
+ * it is seen and kept in an identity map, which later calls are found in.
+ *
+ * Live endpoints have no bound endpoints; each slot instead calls through the
+ * invoker of its {@link LiveEndpoint} call site, which follows changes to the library.
+ *
+ * Query methods include those inherited from super-interfaces. A default method with no
+ * match is not an error; it runs the interface's own implementation instead.
+ *
+ * Asynchronous query methods bound to a resource method that does not return a future
+ * have no bound endpoint, only a handle that runs the call on the library's dispatcher.
+ *
+ * When the library has metrics, each slot also has a counter, which records the time
+ * of every call and any failures. Remote endpoints record each call as a flight recorder event.
+ *
+ * @author Moderocky
+ */
+class ProxyEndpoint implements InvocationHandler {
+    
+    protected final Method[] methods;
+    protected final Endpoint[] endpoints;
+    protected final MethodHandle[] handles;
+    protected final MethodHandle[] defaults;
+    protected final EndpointCounter[] counters;
+    protected final Class<?> query;
+    protected final boolean remote;
+    protected volatile Map<Method, Integer> slots;
+    
+    ProxyEndpoint(Class<?> query, Method[] methods, Endpoint[] endpoints, EndpointCounter[] counters, InvocationStrategy strategy, boolean remote) {
+        this.query = query;
+        this.methods = methods;
+        this.endpoints = endpoints;
+        this.counters = counters;
+        this.remote = remote;
+        this.handles = new MethodHandle[methods.length];
+        this.defaults = new MethodHandle[methods.length];
+        this.slots = createSlots(methods);
+        for (int i = 0; i < endpoints.length; i++) {
+            if (endpoints[i] == null) continue;
+            if (strategy == InvocationStrategy.REFLECTION && isReflective(methods[i], endpoints[i].method())) continue;
+            try {
+                this.handles[i] = endpoints[i].spreader(methods[i]);
+            } catch (IllegalAccessException ex) {
+                // Falls back to reflection for this method.
+            }
+        }
+    }
+    
+    /**
+     * Whether a reflective call's result can be returned as it is. Reflection boxes the result
+     * as the resource method's own type, which only suits a query method returning a primitive
+     * if it is the same primitive; other matches are always called through a handle.
+     */
+    protected static boolean isReflective(Method method, Method match) {
+        final Class<?> type = method.getReturnType();
+        return !type.isPrimitive() || type == void.class || type == match.getReturnType();
+    }
+    
+    ProxyEndpoint(LiveEndpoint live, EndpointCounter[] counters) {
+        this.query = live.query;
+        this.methods = live.methods;
+        this.endpoints = new Endpoint[methods.length];
+        this.counters = counters;
+        this.remote = false;
+        this.handles = new MethodHandle[methods.length];
+        this.defaults = new MethodHandle[methods.length];
+        this.slots = createSlots(methods);
+        for (int i = 0; i < methods.length; i++) this.handles[i] = live.getSpreader(i);
+    }
+    
+    /**
+     * Creates a handler with no bound endpoints, for subclasses that call resources their own way.
+     */
+    protected ProxyEndpoint(Class<?> query, Method[] methods, EndpointCounter[] counters, boolean remote) {
+        this.query = query;
+        this.methods = methods;
+        this.endpoints = new Endpoint[methods.length];
+        this.counters = counters;
+        this.remote = remote;
+        this.handles = new MethodHandle[methods.length];
+        this.defaults = new MethodHandle[methods.length];
+        this.slots = createSlots(methods);
+    }
+    
+    protected static Map<Method, Integer> createSlots(Method[] methods) {
+        final Map<Method, Integer> slots = new IdentityHashMap<>(methods.length);
+        for (int i = 0; i < methods.length; i++) slots.put(methods[i], i);
+        return slots;
+    }
+    
+    static <Query> Query create(Class<? extends Query> type, SignatureIndex index, MethodMatcher matcher, InvocationStrategy strategy,
+                                LibraryMetrics metrics, AsyncDispatcher async, boolean remote) {
+        final ProxyEndpoint handler = bind(type, index, matcher, strategy, metrics, async, remote);
+        return (Query) Proxy.newProxyInstance(ProxyEndpoint.class.getClassLoader(), new Class[]{type}, handler);
+    }
+    
+    /**
+     * Binds each query method to its best match. An asynchronous query method with no
+     * match is bound to a resource method it can run on the dispatcher instead.
+     */
+    static ProxyEndpoint bind(Class<?> type, SignatureIndex index, MethodMatcher matcher, InvocationStrategy strategy,
+                              LibraryMetrics metrics, AsyncDispatcher async, boolean remote) {
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final Endpoint[] endpoints = new Endpoint[methods.length];
+        final Endpoint[] deferred = new Endpoint[methods.length];
+        final EndpointCounter[] counters = metrics != null ? new EndpointCounter[methods.length] : null;
+        for (int i = 0; i < methods.length; i++) {
+            if (metrics != null) counters[i] = metrics.counter(type, methods[i]);
+            final Endpoint endpoint = find(index, matcher, async, type, methods[i]);
+            if (endpoint == null) {
+                if (metrics != null && !methods[i].isDefault()) metrics.unmatched(type, methods[i]);
+                continue;
+            }
+            if (async != null && AsyncDispatcher.isAsync(methods[i], endpoint.method())) {
+                deferred[i] = endpoint;
+                continue;
+            }
+            AccessUtility.access(endpoint.method());
+            endpoints[i] = endpoint;
+        }
+        final ProxyEndpoint handler = new ProxyEndpoint(type, methods, endpoints, counters, strategy, remote);
+        for (int i = 0; i < methods.length; i++) {
+            if (deferred[i] != null) handler.handles[i] = async.createSpreader(methods[i], deferred[i]);
+        }
+        return handler;
+    }
+    
+    /**
+     * Finds the best match for a query method, or for an asynchronous query method,
+     * a resource method it can run on the dispatcher.
+     */
+    static Endpoint find(SignatureIndex index, MethodMatcher matcher, AsyncDispatcher async, Class<?> query, Method method) {
+        final Endpoint endpoint = index.find(query, method, matcher);
+        if (endpoint != null || async == null) return endpoint;
+        return AsyncDispatcher.find(index, matcher, query, method);
+    }
+    
+    static <Query> Query createLive(LiveEndpoint live, LibraryMetrics metrics) {
+        final EndpointCounter[] counters = metrics != null ? new EndpointCounter[live.methods.length] : null;
+        for (int i = 0; counters != null && i < counters.length; i++) counters[i] = metrics.counter(live.query, live.methods[i]);
+        final ProxyEndpoint handler = new ProxyEndpoint(live, counters);
+        return (Query) Proxy.newProxyInstance(ProxyEndpoint.class.getClassLoader(), new Class[]{live.query}, handler);
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object... args) throws Throwable {
+        final int slot = this.slot(method);
+        final EndpointCounter counter = counters != null && slot >= 0 ? counters[slot] : null;
+        if (slot < 0 || !this.isMatched(slot)) {
+            if (method.isDefault()) return this.callDefault(proxy, slot, method, args);
+            if (counter != null) counter.fail();
+            throw new UnmatchedEndpointException("Unmatched library method: '" + method.getName() + "'");
+        }
+        if (!remote && counter == null) return this.call(slot, args);
+        final RemoteCallEvent event = remote ? new RemoteCallEvent() : null;
+        if (event != null) event.begin();
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Object result = this.call(slot, args);
+            failed = false;
+            return result;
+        } finally {
+            if (counter != null) {
+                counter.record(System.nanoTime() - start);
+                if (failed) counter.fail();
+            }
+            if (event != null) event.end();
+            if (event != null && event.shouldCommit()) {
+                event.query = query;
+                event.method = method.getName();
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+    
+    protected boolean isMatched(int slot) {
+        return handles[slot] != null || endpoints[slot] != null;
+    }
+    
+    /**
+     * Runs the interface's own implementation of an unmatched default method.
+     */
+    protected Object callDefault(Object proxy, int slot, Method method, Object... args) throws Throwable {
+        MethodHandle handle = slot >= 0 ? defaults[slot] : null;
+        if (handle == null) handle = AccessUtility.getDefault(method);
+        if (slot >= 0) this.defaults[slot] = handle;
+        return (Object) handle.invokeExact(proxy, args);
+    }
+    
+    protected Object call(int slot, Object... args) throws Throwable {
+        final MethodHandle handle = handles[slot];
+        if (handle == null) return endpoints[slot].invoke(args);
+        try {
+            return (Object) handle.invokeExact(args);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new EndpointInvocationException(ex);
+        }
+    }
+    
+    protected int slot(Method method) {
+        final Map<Method, Integer> slots = this.slots;
+        final Integer known = slots.get(method);
+        if (known != null) return known;
+        final int slot = this.findSlot(method);
+        if (slot < 0) return slot;
+        // Copied on write, since a new method object is only seen once for each query method.
+        final Map<Method, Integer> copy = new IdentityHashMap<>(slots);
+        copy.put(method, slot);
+        this.slots = copy;
+        return slot;
+    }
+    
+    /**
+     * Finds the slot for a method object that has not been seen before.
+     */
+    protected int findSlot(Method method) {
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].equals(method)) return i;
+        }
+        // A bridge, or a method the query inherits from more than one interface.
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i].getName().equals(method.getName())
+                && Arrays.equals(methods[i].getParameterTypes(), method.getParameterTypes())) return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,67 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics that keep their totals in memory for the application to read.
+ *
+ * One instance can be shared between several libraries.
+ *
+ * @author Moderocky
+ */
+public class RecordingMetrics implements LibraryMetrics {
+    
+    protected final Map<Method, EndpointCounter> counters = new ConcurrentHashMap<>();
+    protected final Set<Method> unmatched = ConcurrentHashMap.newKeySet();
+    protected final LongAdder bindings = new LongAdder();
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder time = new LongAdder();
+    
+    @Override
+    public EndpointCounter counter(Class<?> query, Method method) {
+        return counters.computeIfAbsent(method, key -> new EndpointCounter());
+    }
+    
+    @Override
+    public void bound(Class<?> query, long nanos, boolean cached) {
+        this.bindings.increment();
+        this.time.add(nanos);
+        if (cached) this.hits.increment();
+    }
+    
+    @Override
+    public void unmatched(Class<?> query, Method method) {
+        this.unmatched.add(method);
+    }
+    
+    public EndpointCounter getCounter(Method method) {
+        return counters.get(method);
+    }
+    
+    public Map<Method, EndpointCounter> getCounters() {
+        return Map.copyOf(counters);
+    }
+    
+    public Set<Method> getUnmatched() {
+        return Set.copyOf(unmatched);
+    }
+    
+    public long getBindings() {
+        return bindings.sum();
+    }
+    
+    public long getBindingTime() {
+        return time.sum();
+    }
+    
+    public double getCacheHitRate() {
+        final long total = bindings.sum();
+        if (total == 0) return 0;
+        return (double) hits.sum() / total;
+    }
+
+}
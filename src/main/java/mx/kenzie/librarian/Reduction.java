@@ -0,0 +1,37 @@
+package mx.kenzie.librarian;
+
+/**
+ * The way a broadcast query method combines the results of every resource method it calls.
+ *
+ * @author Moderocky
+ * @see Broadcast
+ * @see Library#lookForBroadcast(Class)
+ */
+public enum Reduction {
+    /**
+     * Calls every match and ignores the results. The query method must return void.
+     */
+    NONE,
+    /**
+     * Collects every result, in registration order, into an array of the query method's return type.
+     * Each match must return the array's component type.
+     */
+    ARRAY,
+    /**
+     * Adds up every result. The query method must return an int, long, float or double.
+     */
+    SUM,
+    /**
+     * Returns the first result that is not null, without calling any later match.
+     * A query method returning a primitive returns the result of the first match.
+     */
+    FIRST_NON_NULL,
+    /**
+     * Returns true as soon as a match returns true. The query method must return a boolean.
+     */
+    ANY,
+    /**
+     * Returns false as soon as a match returns false. The query method must return a boolean.
+     */
+    ALL
+}
@@ -0,0 +1,173 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.RegistryAccessException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A queue of calls to the resources of a remote library, which are sent together
+ * when the batch is flushed.
+ *
+ * Each call is described by applying a function to a query interface, as it would be
+ * made on a normal endpoint, and its result is given as a future that completes when
+ * the batch has been sent. A flush makes one request to each library exporting resources,
+ * rather than one per call.
+ *
+ * Calls to the same resource are made in the order they were queued, including
+ * across flushes. A flush may be sent in the background while more calls are queued.
+ *
+ * @author Moderocky
+ */
+public class RemoteBatch {
+    
+    protected final RemoteLibrary library;
+    protected final List<Pending> queue = new ArrayList<>();
+    protected CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    
+    RemoteBatch(RemoteLibrary library) {
+        this.library = library;
+    }
+    
+    /**
+     * Queues a call, made by the function on the query.
+     * The function must call exactly one method of the query and return its result.
+     */
+    public <Query, Result> CompletableFuture<Result> submit(Class<Query> type, Function<? super Query, Result> call) {
+        assert type.isInterface();
+        final Recorder recorder = new Recorder();
+        call.apply(type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, recorder)));
+        if (recorder.method == null)
+            throw new IllegalArgumentException("The call did not use the query.");
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        synchronized (this) {
+            this.queue.add(new Pending(type, recorder.method, recorder.arguments, future));
+        }
+        return (CompletableFuture<Result>) future;
+    }
+    
+    /**
+     * Queues a call to a method that returns nothing.
+     */
+    public <Query> CompletableFuture<Void> run(Class<Query> type, Consumer<? super Query> call) {
+        return this.submit(type, query -> {
+            call.accept(query);
+            return null;
+        }).thenApply(result -> null);
+    }
+    
+    public synchronized int size() {
+        return queue.size();
+    }
+    
+    /**
+     * Sends every queued call from this thread, after any earlier flush has been sent,
+     * and waits for the results. The futures of calls that fail are completed exceptionally.
+     */
+    public void flush() {
+        final List<Pending> calls;
+        final CompletableFuture<Void> previous, sent;
+        synchronized (this) {
+            previous = tail;
+            if (queue.isEmpty()) {
+                calls = null;
+                sent = null;
+            } else {
+                calls = new ArrayList<>(queue);
+                this.queue.clear();
+                this.tail = sent = new CompletableFuture<>();
+            }
+        }
+        previous.join();
+        if (calls == null) return;
+        try {
+            this.send(calls);
+        } finally {
+            sent.complete(null);
+        }
+    }
+    
+    /**
+     * Sends every queued call in the background, after any earlier flush has been sent.
+     */
+    public synchronized CompletableFuture<Void> flushAsync() {
+        if (queue.isEmpty()) return tail;
+        final List<Pending> calls = new ArrayList<>(queue);
+        this.queue.clear();
+        return this.tail = tail.thenRunAsync(() -> this.send(calls));
+    }
+    
+    protected void send(List<Pending> calls) {
+        List<Pending> remaining = calls;
+        try {
+            for (final BatchDispatcher dispatcher : library.getDispatchers()) {
+                if (remaining.isEmpty()) return;
+                final Map<List<Object>, Integer> indices = new HashMap<>();
+                final List<BatchDispatcher.Call> methods = new ArrayList<>();
+                final int[] requests = new int[remaining.size()];
+                final Object[][] arguments = new Object[requests.length][];
+                for (int i = 0; i < requests.length; i++) {
+                    final Pending pending = remaining.get(i);
+                    requests[i] = indices.computeIfAbsent(List.of(pending.query, pending.method), key -> {
+                        methods.add(pending.describe(library.getMatcher()));
+                        return methods.size() - 1;
+                    });
+                    arguments[i] = pending.arguments;
+                }
+                final Object[] results = dispatcher.dispatch(methods.toArray(new BatchDispatcher.Call[0]), requests, arguments);
+                final List<Pending> unmatched = new ArrayList<>();
+                for (int i = 0; i < results.length; i++) {
+                    final Pending pending = remaining.get(i);
+                    if (!(results[i] instanceof BatchDispatcher.Failure failure)) pending.future.complete(results[i]);
+                    else if (failure.unmatched()) unmatched.add(pending);
+                    else pending.future.completeExceptionally(failure.error());
+                }
+                remaining = unmatched;
+            }
+        } catch (RemoteException | RuntimeException ex) {
+            this.library.invalidate(); // a cached stub may be out of date
+            final RegistryAccessException error = new RegistryAccessException("Unable to send batch to remote.", ex);
+            for (final Pending pending : remaining) pending.future.completeExceptionally(error);
+            return;
+        }
+        for (final Pending pending : remaining) {
+            pending.future.completeExceptionally(new UnmatchedEndpointException("Unmatched library method: '" + pending.method.getName() + "'"));
+        }
+    }
+    
+    protected record Pending(Class<?> query, Method method, Object[] arguments, CompletableFuture<Object> future) {
+        
+        BatchDispatcher.Call describe(MethodMatcher matcher) {
+            return new BatchDispatcher.Call(matcher.getNames(method),
+                AccessUtility.getReturnType(query, method), AccessUtility.getParameterTypes(query, method));
+        }
+    
+    }
+    
+    static class Recorder implements InvocationHandler {
+        Method method;
+        Object[] arguments;
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (this.method != null) throw new IllegalStateException("Only one call can be made at a time.");
+            this.method = method;
+            this.arguments = args != null ? args : new Object[0];
+            final Class<?> type = method.getReturnType();
+            if (!type.isPrimitive() || type == void.class) return null;
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+    }
+
+}
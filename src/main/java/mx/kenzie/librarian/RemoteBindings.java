@@ -0,0 +1,81 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.cobweb.Registry;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the bindings in a registry, held by a {@link RemoteLibrary} so that
+ * queries can be answered without calling the registry.
+ *
+ * The snapshot is immutable once fetched, and carries its own signature and type
+ * indices over the stubs it holds. When a snapshot is fetched to replace an older one,
+ * stubs for keys that are still bound are kept rather than retrieved again.
+ * Changes pushed to a subscribed library are applied by making a changed copy.
+ *
+ * @author Moderocky
+ */
+class RemoteBindings {
+    
+    final long fetched;
+    final Map<String, Remote> stubs;
+    final Remote[] resources;
+    final List<BatchDispatcher> dispatchers;
+    final Map<String, BindingListener> listeners;
+    final SignatureIndex index = new SignatureIndex();
+    final TypeIndex types;
+    
+    private RemoteBindings(long fetched, Map<String, Remote> stubs) {
+        this.fetched = fetched;
+        this.stubs = Collections.unmodifiableMap(stubs);
+        final List<Remote> resources = new ArrayList<>();
+        final List<BatchDispatcher> dispatchers = new ArrayList<>();
+        final Map<String, BindingListener> listeners = new LinkedHashMap<>();
+        for (final Map.Entry<String, Remote> entry : stubs.entrySet()) {
+            if (!RemoteLibrary.isReserved(entry.getKey())) resources.add(entry.getValue());
+            else if (entry.getValue() instanceof BatchDispatcher dispatcher) dispatchers.add(dispatcher);
+            else if (entry.getValue() instanceof BindingListener listener) listeners.put(entry.getKey(), listener);
+        }
+        this.resources = resources.toArray(new Remote[0]);
+        this.dispatchers = List.copyOf(dispatchers);
+        this.listeners = Collections.unmodifiableMap(listeners);
+        for (final Remote resource : this.resources) index.add(resource);
+        this.types = new TypeIndex(Arrays.asList(this.resources));
+    }
+    
+    static RemoteBindings fetch(Registry registry, RemoteBindings previous) throws RemoteException {
+        final long fetched = System.nanoTime();
+        final Map<String, Remote> stubs = new LinkedHashMap<>();
+        for (final String key : registry.getBindings()) {
+            final Remote known = previous != null ? previous.stubs.get(key) : null;
+            final Remote stub = known != null ? known : registry.retrieve(key);
+            if (stub != null) stubs.put(key, stub);
+        }
+        return new RemoteBindings(fetched, stubs);
+    }
+    
+    /**
+     * Creates a copy of these bindings with some keys bound to new stubs,
+     * or unbound where the stub is null.
+     */
+    RemoteBindings with(String[] keys, Remote[] stubs) {
+        final Map<String, Remote> changed = new LinkedHashMap<>(this.stubs);
+        for (int i = 0; i < keys.length; i++) {
+            if (stubs[i] == null) changed.remove(keys[i]);
+            else changed.put(keys[i], stubs[i]);
+        }
+        return new RemoteBindings(System.nanoTime(), changed);
+    }
+    
+    boolean isFresh(long duration) {
+        return System.nanoTime() - fetched < duration;
+    }
+
+}
@@ -0,0 +1,28 @@
+package mx.kenzie.librarian;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by Java Flight Recorder for each call through a remote query endpoint.
+ *
+ * @author Moderocky
+ */
+@Name("mx.kenzie.librarian.RemoteCall")
+@Label("Remote Call")
+@Category("Librarian")
+@Description("A query endpoint called a method on a remote resource.")
+class RemoteCallEvent extends jdk.jfr.Event {
+    
+    @Label("Query")
+    Class<?> query;
+    
+    @Label("Method")
+    String method;
+    
+    @Label("Failed")
+    boolean failed;
+
+}
@@ -0,0 +1,108 @@
+package mx.kenzie.librarian;
+
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.rmi.Remote;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs batches of calls against the resources a remote library has exported,
+ * so that many calls cost a single round trip.
+ *
+ * Calls are matched by the library's {@link MethodMatcher}, under the query method's
+ * names and with its types as seen from the query, as an endpoint would match them.
+ * They are only made to methods declared by one of the resource's remote interfaces,
+ * which are the same methods its remote stub would expose. Calls in a batch run in
+ * order on a single thread, so calls to the same resource are made in the order queued.
+ *
+ * @author Moderocky
+ */
+class RemoteDispatcher implements BatchDispatcher {
+    
+    private static final ClassValue<Set<SignatureIndex.Signature>> REMOTE_METHODS = new ClassValue<>() {
+        @Override
+        protected Set<SignatureIndex.Signature> computeValue(Class<?> type) {
+            final Set<SignatureIndex.Signature> signatures = new HashSet<>();
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for (final Class<?> face : current.getInterfaces()) this.collect(face, signatures);
+            }
+            return Set.copyOf(signatures);
+        }
+        
+        private void collect(Class<?> face, Set<SignatureIndex.Signature> signatures) {
+            if (Remote.class.isAssignableFrom(face) && face != Remote.class) {
+                for (final Method method : face.getMethods()) {
+                    signatures.add(SignatureIndex.Signature.of(method));
+                }
+            }
+            for (final Class<?> parent : face.getInterfaces()) this.collect(parent, signatures);
+        }
+    };
+    
+    protected final SignatureIndex index = new SignatureIndex();
+    protected final Map<String, Object> resources = new HashMap<>();
+    protected final RemoteLibrary library;
+    
+    RemoteDispatcher(RemoteLibrary library) {
+        this.library = library;
+    }
+    
+    void add(String key, Object resource) {
+        synchronized (index) {
+            final Object previous = resources.put(key, resource);
+            if (previous != null) index.remove(previous);
+            index.add(resource);
+        }
+    }
+    
+    void remove(String key) {
+        synchronized (index) {
+            final Object resource = resources.remove(key);
+            if (resource != null) index.remove(resource);
+        }
+    }
+    
+    @Override
+    public Object[] dispatch(Call[] methods, int[] calls, Object[][] arguments) {
+        final MethodHandle[] handles = new MethodHandle[methods.length];
+        final Failure[] failures = new Failure[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            final Call call = methods[i];
+            final Endpoint endpoint = this.find(call);
+            if (endpoint == null) {
+                failures[i] = new Failure(new UnmatchedEndpointException("Unmatched library method: '" + call.names()[0] + "'"), true);
+                continue;
+            }
+            try {
+                handles[i] = endpoint.spreader(call.returnType(), call.parameters());
+            } catch (IllegalAccessException | RuntimeException ex) {
+                failures[i] = new Failure(ex, false);
+            }
+        }
+        final Object[] results = new Object[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            final int method = calls[i];
+            results[i] = failures[method] != null ? failures[method] : this.dispatch(handles[method], arguments[i]);
+        }
+        return results;
+    }
+    
+    protected Object dispatch(MethodHandle handle, Object[] arguments) {
+        try {
+            return handle.invokeExact(arguments);
+        } catch (Throwable ex) {
+            return new Failure(ex, false);
+        }
+    }
+    
+    protected Endpoint find(Call call) {
+        return index.findBest(library.getMatcher(), call.names(), call.returnType(), call.parameters(), endpoint ->
+            REMOTE_METHODS.get(endpoint.resource().getClass()).contains(SignatureIndex.Signature.of(endpoint.method())));
+    }
+
+}
@@ -0,0 +1,59 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * The invocation handler behind remote query endpoints.
+ *
+ * The endpoint is bound against the library's cached bindings, and is bound again
+ * on the next call whenever those bindings have changed, such as when another
+ * application registers a resource. Calls made while the bindings are unchanged
+ * cost one extra field read. Broadcast endpoints are bound again in the same way.
+ *
+ * @author Moderocky
+ */
+class RemoteEndpoint implements InvocationHandler {
+    
+    protected final RemoteLibrary library;
+    protected final Function<SignatureIndex, ProxyEndpoint> binder;
+    protected volatile Bound bound;
+    
+    RemoteEndpoint(RemoteLibrary library, Function<SignatureIndex, ProxyEndpoint> binder, RemoteBindings bindings) {
+        this.library = library;
+        this.binder = binder;
+        this.bound = this.bind(bindings);
+    }
+    
+    static <Query> Query create(Class<? extends Query> type, RemoteLibrary library, LibraryMetrics metrics) {
+        return create(type, library, index -> ProxyEndpoint.bind(type, index, library.matcher, InvocationStrategy.METHOD_HANDLE, metrics, library.async, true));
+    }
+    
+    static <Query> Query createBroadcast(Class<? extends Query> type, RemoteLibrary library, LibraryMetrics metrics, Executor executor) {
+        return create(type, library, index -> BroadcastEndpoint.bind(type, index, library.matcher, metrics, executor, true));
+    }
+    
+    static <Query> Query create(Class<? extends Query> type, RemoteLibrary library, Function<SignatureIndex, ProxyEndpoint> binder) {
+        final RemoteEndpoint handler = new RemoteEndpoint(library, binder, library.getBindings());
+        return (Query) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(), new Class[]{type}, handler);
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object... args) throws Throwable {
+        final RemoteBindings current = library.getCurrentBindings();
+        Bound bound = this.bound;
+        if (bound.bindings != current) this.bound = bound = this.bind(current);
+        return bound.handler.invoke(proxy, method, args);
+    }
+    
+    protected Bound bind(RemoteBindings bindings) {
+        return new Bound(bindings, binder.apply(bindings.index));
+    }
+    
+    protected record Bound(RemoteBindings bindings, ProxyEndpoint handler) {
+    }
+
+}
@@ -2,29 +2,58 @@ package mx.kenzie.librarian;
 
 import mx.kenzie.cobweb.Registry;
 import mx.kenzie.librarian.error.RegistryAccessException;
-import mx.kenzie.librarian.error.UnmatchedEndpointException;
 
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.net.InetAddress;
+import java.rmi.NoSuchObjectException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * A more complex library designed to wrap a Remote registry and provide
  * access to Remote resources from external JVMs and Java applications.
  *
+ * Alongside its resources, a library that registers resources exports a dispatcher
+ * under a reserved key, through which {@link RemoteBatch}es can make many calls to
+ * them in a single request. Reserved keys are never reported as resources.
+ *
+ * The registry's bindings are cached locally, along with a stub for each of them,
+ * so that resource lookups and queries do not need to call the registry. The cache
+ * is refreshed once it is older than the library's cache duration, and is dropped
+ * whenever this library changes the registry. Bindings made by other applications
+ * may therefore take up to the cache duration to be seen, unless {@link #refresh()}
+ * is called.
+ *
+ * A library can instead {@link #subscribe()} to changes. Every library that changes
+ * the registry pushes the keys it bound or unbound to each subscriber, which updates
+ * its cache in place rather than asking the registry again, and its endpoints are
+ * bound again on their next call.
+ *
  * @author Moderocky
  */
 public class RemoteLibrary implements Library<Remote> {
     
+    public static final Duration DEFAULT_CACHE_DURATION = Duration.ofSeconds(1);
+    static final String RESERVED = "#librarian-";
+    
     protected final Registry registry;
+    protected final Object cacheLock = new Object();
+    protected volatile RemoteBindings bindings;
+    protected volatile long cacheDuration = DEFAULT_CACHE_DURATION.toNanos();
+    protected volatile LibraryMetrics metrics;
+    protected RemoteDispatcher dispatcher;
+    protected String dispatcherKey;
+    protected volatile String subscription;
+    protected volatile boolean strict;
+    protected volatile MethodMatcher matcher = MethodMatcher.STRUCTURAL;
+    final AsyncDispatcher async = new AsyncDispatcher();
     
     //region Constructors
     public RemoteLibrary() {
@@ -44,19 +73,176 @@ public class RemoteLibrary implements Library<Remote> {
     }
     //endregion
     
+    /**
+     * Sets the metrics that endpoints from later queries report their calls to,
+     * or removes them if null. Remote calls are always recorded as flight recorder events.
+     */
+    public void setMetrics(LibraryMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Sets whether the library is strict, in which case looking for an endpoint fails with
+     * an {@link mx.kenzie.librarian.error.UnmatchedEndpointException} if any query method
+     * has no match. Otherwise unmatched methods throw only when they are called.
+     * Endpoints are only checked when they are first bound, and broadcast endpoints are never strict.
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+    
+    public boolean isStrict() {
+        return strict;
+    }
+    
+    /**
+     * Sets how query methods are matched to resource methods, see {@link MethodMatcher}.
+     * Existing endpoints use it the next time they are bound.
+     */
+    public void setMatcher(MethodMatcher matcher) {
+        this.matcher = matcher;
+    }
+    
+    public MethodMatcher getMatcher() {
+        return matcher;
+    }
+    
+    /**
+     * Sets the executor that asynchronous query methods run their resource calls on.
+     * If null, each call gets a virtual thread where the runtime supports them, or
+     * otherwise runs on a shared pool of daemon threads.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.async.executor = executor;
+    }
+    
+    /**
+     * Sets how many asynchronous calls may run on each resource at once. Later calls wait
+     * until one finishes. This applies to existing endpoints from their next call.
+     */
+    public void setAsyncLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive.");
+        this.async.limit = limit;
+    }
+    
+    /**
+     * Sets how long the cached bindings are used before the registry is asked again.
+     * A zero duration asks the registry every time.
+     */
+    public void setCacheDuration(Duration duration) {
+        this.cacheDuration = duration.toNanos();
+    }
+    
+    /**
+     * Fetches the registry's bindings now, replacing the cached ones.
+     * Stubs that are still bound are kept.
+     */
+    public void refresh() {
+        synchronized (cacheLock) {
+            this.bindings = this.fetch(bindings);
+        }
+    }
+    
+    /**
+     * Drops the cached bindings and stubs, so the next lookup fetches them all again.
+     */
+    public void invalidate() {
+        this.bindings = null;
+    }
+    
+    /**
+     * Subscribes to changes made to the registry by other libraries, which are then applied
+     * to the cached bindings as they happen. While subscribed, the cache does not expire.
+     *
+     * @return false if this library was already subscribed
+     */
+    public synchronized boolean subscribe() {
+        if (subscription != null) return false;
+        final String key = BindingListener.KEY + UUID.randomUUID();
+        try {
+            registry.export(key, new RemoteSubscription(this));
+        } catch (Throwable ex) {
+            throw new RegistryAccessException("Unable to export subscription to remote.", ex);
+        }
+        this.subscription = key;
+        this.refresh();
+        return true;
+    }
+    
+    /**
+     * Stops receiving changes, after which the cached bindings expire as normal.
+     *
+     * @return false if this library was not subscribed
+     */
+    public synchronized boolean unsubscribe() {
+        final String key = subscription;
+        if (key == null) return false;
+        this.subscription = null;
+        try {
+            registry.unbind(key);
+        } catch (Throwable ex) {
+            throw new RegistryAccessException("Unable to unbind subscription.", ex);
+        }
+        this.publish(key);
+        return true;
+    }
+    
+    public boolean isSubscribed() {
+        return subscription != null;
+    }
+    
+    /**
+     * Creates a batch for making many calls to this library's resources at once.
+     */
+    public RemoteBatch batch() {
+        return new RemoteBatch(this);
+    }
+    
     @Override
     public boolean register(Remote object) {
         try {
-            return registry.export(object.hashCode() + "", object) != null;
+            final String key = object.hashCode() + "";
+            if (registry.export(key, object) == null) return false;
+            this.getDispatcher().add(key, object);
+            this.publish(key, dispatcherKey);
+            return true;
         } catch (Throwable ex) {
             throw new RegistryAccessException("Unable to export object to remote.", ex);
         }
     }
     
+    /**
+     * Exports the resources, then pushes all their keys to subscribers in one change.
+     */
+    @Override
+    public boolean registerAll(Collection<? extends Remote> objects) {
+        final List<String> added = new ArrayList<>();
+        try {
+            for (final Remote object : objects) {
+                final String key = object.hashCode() + "";
+                if (registry.export(key, object) == null) continue;
+                this.getDispatcher().add(key, object);
+                added.add(key);
+            }
+        } catch (Throwable ex) {
+            throw new RegistryAccessException("Unable to export object to remote.", ex);
+        } finally {
+            if (!added.isEmpty()) {
+                added.add(dispatcherKey);
+                this.publish(added.toArray(new String[0]));
+            }
+        }
+        return !added.isEmpty();
+    }
+    
     @Override
     public boolean unregister(Remote object) {
         try {
-            return registry.unbind(object.hashCode() + "");
+            final String key = object.hashCode() + "";
+            this.forget(key);
+            if (!registry.unbind(key)) return false;
+            this.publish(key);
+            return true;
         } catch (Throwable ex) {
             throw new RegistryAccessException("Unable to unbind remote object.", ex);
         }
@@ -64,114 +250,224 @@ public class RemoteLibrary implements Library<Remote> {
     
     @Override
     public boolean unregisterAll(Class<? extends Remote> type) {
-        boolean changed = false;
+        final List<String> removed = new ArrayList<>();
         try {
-            for (final String key : registry.getBindings()) {
-                final Remote resource = registry.retrieve(key);
-                if (type.isInstance(resource)) {
-                    changed = true;
-                    registry.unbind(key);
-                }
+            for (final Map.Entry<String, Remote> entry : this.fetch(bindings).stubs.entrySet()) {
+                if (isReserved(entry.getKey()) || !type.isInstance(entry.getValue())) continue;
+                this.forget(entry.getKey());
+                if (registry.unbind(entry.getKey())) removed.add(entry.getKey());
             }
         } catch (RemoteException ex) {
             throw new RegistryAccessException("Unable to access remote bindings.", ex);
+        } finally {
+            this.publish(removed.toArray(new String[0]));
         }
-        return changed;
+        return !removed.isEmpty();
     }
     
     @Override
     public boolean unregisterAll() {
-        try {
-            return registry.emptyBindings() > 0;
-        } catch (RemoteException ex) {
-            throw new RegistryAccessException("Unable to access remote bindings.", ex);
-        }
+        return this.empty() > 0;
     }
     
     @Override
     public int empty() {
+        final List<String> removed = new ArrayList<>();
         try {
-            return registry.emptyBindings();
+            for (final String key : registry.getBindings()) {
+                if (!isReserved(key) && registry.unbind(key)) removed.add(key);
+            }
+            final int count = removed.size();
+            synchronized (this) {
+                if (dispatcherKey != null && registry.unbind(dispatcherKey)) removed.add(dispatcherKey);
+                this.dispatcher = null;
+                this.dispatcherKey = null;
+            }
+            return count;
         } catch (RemoteException e) {
             throw new RegistryAccessException("Unable to empty bindings.", e);
+        } finally {
+            this.publish(removed.toArray(new String[0]));
         }
     }
     
     @Override
     public int resourceCount() {
-        try {
-            return registry.getBindings().length;
-        } catch (RemoteException ex) {
-            throw new RegistryAccessException("Unable to access remote bindings.", ex);
-        }
+        return this.getBindings().resources.length;
     }
     
     @Override
     public Remote[] getResources() {
-        final List<Remote> resources = new ArrayList<>();
-        try {
-            for (final String key : registry.getBindings()) {
-                final Remote resource = registry.retrieve(key);
-                resources.add(resource);
-            }
-        } catch (RemoteException ex) {
-            throw new RegistryAccessException("Unable to access remote bindings.", ex);
-        }
-        return resources.toArray(new Remote[0]);
+        return this.getBindings().resources.clone();
     }
     
     @Override
     public <Query extends Remote> Query getResource(Class<Query> type) {
-        for (final Remote resource : getResources()) {
-            if (type.isInstance(resource)) return (Query) resource;
-        }
-        return null;
+        final Object[] found = this.getBindings().types.get(type);
+        if (found.length == 0) return null;
+        return (Query) found[0];
     }
     
+    /**
+     * Finds every cached stub assignable to the given type.
+     * The result is shared between callers until the cache is refreshed, so it must not be modified.
+     */
     @Override
     public <Query extends Remote> Query[] getAllResources(Class<Query> type) {
-        final List<Remote> objects = new ArrayList<>();
-        for (final Remote resource : getResources()) {
-            if (type.isInstance(resource)) objects.add(resource);
-        }
-        return objects.toArray((Query[]) Array.newInstance(type, 0));
+        return (Query[]) this.getBindings().types.get(type);
     }
     
     @Override
     public <Query> Query lookFor(Class<? extends Query> type) {
         assert type.isInterface();
-        class Handler implements InvocationHandler {
-            final Map<Method, Endpoint> map = new HashMap<>();
-            
-            @Override
-            public Object invoke(Object proxy, Method method, Object... args) {
-                final Endpoint endpoint = map.get(method);
-                if (endpoint == null)
-                    throw new UnmatchedEndpointException("Unmatched library method: '" + method.getName() + "'");
-                return endpoint.invoke(args);
+        final LibraryMetrics metrics = this.metrics;
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        if (strict) this.report(type).require();
+        final Query endpoint = RemoteEndpoint.create(type, this, metrics);
+        if (metrics != null) metrics.bound(type, System.nanoTime() - start, false);
+        event.end();
+        if (event.shouldCommit()) {
+            event.query = type;
+            event.library = this.getClass();
+            event.commit();
+        }
+        return endpoint;
+    }
+    
+    /**
+     * Describes the endpoint that {@link #lookFor(Class)} would bind for the query, against the cached bindings.
+     */
+    @Override
+    public BindingReport report(Class<?> type) {
+        final SignatureIndex index = this.getBindings().index;
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final Endpoint[] endpoints = new Endpoint[methods.length];
+        for (int i = 0; i < methods.length; i++) endpoints[i] = ProxyEndpoint.find(index, matcher, async, type, methods[i]);
+        return BindingReport.of(type, methods, endpoints);
+    }
+    
+    /**
+     * Finds a broadcast endpoint, which follows the cached bindings in the same way as a normal endpoint.
+     * Broadcasting on an executor lets slow remote resources be called at the same time.
+     */
+    @Override
+    public <Query> Query lookForBroadcast(Class<? extends Query> type, Executor executor) {
+        assert type.isInterface();
+        return RemoteEndpoint.createBroadcast(type, this, metrics, executor);
+    }
+    
+    /**
+     * Remote endpoints always follow the cached bindings, so this is the same as {@link #lookFor(Class)}.
+     */
+    @Override
+    public <Query> Query lookForLive(Class<? extends Query> type) {
+        return this.lookFor(type);
+    }
+    
+    @Override
+    public Method lookForMethod(Class<?> returnType, String name, Class<?>... parameters) {
+        final Endpoint endpoint = this.getBindings().index.find(returnType, name, parameters);
+        if (endpoint == null) return null;
+        AccessUtility.access(endpoint.method());
+        return endpoint.method();
+    }
+    
+    /**
+     * Finds the dispatchers exported to the registry by every library with resources in it.
+     */
+    List<BatchDispatcher> getDispatchers() {
+        return this.getBindings().dispatchers;
+    }
+    
+    /**
+     * Gets the cached bindings, fetching them first if they are missing or have expired.
+     */
+    RemoteBindings getBindings() {
+        final RemoteBindings current = bindings;
+        if (current != null && (subscription != null || current.isFresh(cacheDuration))) return current;
+        synchronized (cacheLock) {
+            final RemoteBindings known = bindings;
+            if (known != null && (subscription != null || known.isFresh(cacheDuration))) return known;
+            return this.bindings = this.fetch(known);
+        }
+    }
+    
+    /**
+     * Gets the cached bindings even if they have expired, only fetching them if there are none.
+     * Endpoints use this to notice changes without asking the registry on every call.
+     */
+    RemoteBindings getCurrentBindings() {
+        final RemoteBindings current = bindings;
+        return current != null ? current : this.getBindings();
+    }
+    
+    /**
+     * Applies changes pushed by another library to the cached bindings.
+     */
+    void apply(String[] keys, Remote[] stubs) {
+        synchronized (cacheLock) {
+            final RemoteBindings current = bindings;
+            if (current != null) this.bindings = current.with(keys, stubs);
+        }
+    }
+    
+    /**
+     * Brings the cached bindings up to date after this library has changed the registry,
+     * then tells every subscribed library which keys changed. A subscriber that can no
+     * longer be reached is skipped, and is unbound if it no longer exists.
+     */
+    protected void publish(String... keys) {
+        if (keys.length == 0) return;
+        final RemoteBindings after;
+        try {
+            synchronized (cacheLock) {
+                this.bindings = after = this.fetch(bindings);
             }
+        } catch (RegistryAccessException ex) {
+            this.invalidate();
+            return;
         }
-        final Handler handler = new Handler();
-        for (final Method method : type.getDeclaredMethods()) {
-            for (final Remote resource : this.getResources()) {
-                final Method match = AccessUtility.getMatchingMethod(resource, method);
-                if (match == null) continue;
-                AccessUtility.access(match);
-                handler.map.put(method, new Endpoint(resource, match));
-                break;
+        final Remote[] stubs = new Remote[keys.length];
+        for (int i = 0; i < keys.length; i++) stubs[i] = after.stubs.get(keys[i]);
+        for (final Map.Entry<String, BindingListener> entry : after.listeners.entrySet()) {
+            if (entry.getKey().equals(subscription)) continue;
+            try {
+                entry.getValue().changed(keys, stubs);
+            } catch (NoSuchObjectException ex) {
+                try {
+                    registry.unbind(entry.getKey());
+                } catch (RemoteException ignored) {
+                }
+            } catch (RemoteException ignored) {
+                // The subscriber will catch up when it next refreshes.
             }
         }
-        return (Query) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[]{type}, handler);
     }
     
-    @Override
-    public Method lookForMethod(Class<?> returnType, String name, Class<?>... parameters) {
-        for (final Remote resource : this.getResources()) {
-            final Method match = AccessUtility.getMatchingMethod(resource, returnType, name, parameters);
-            if (match == null) continue;
-            AccessUtility.access(match);
-            return match;
+    protected RemoteBindings fetch(RemoteBindings previous) {
+        try {
+            return RemoteBindings.fetch(registry, previous);
+        } catch (RemoteException ex) {
+            throw new RegistryAccessException("Unable to access remote bindings.", ex);
         }
-        return null;
+    }
+    
+    protected synchronized RemoteDispatcher getDispatcher() throws RemoteException {
+        if (dispatcher != null) return dispatcher;
+        final RemoteDispatcher created = new RemoteDispatcher(this);
+        final String key = BatchDispatcher.KEY + UUID.randomUUID();
+        registry.export(key, created);
+        this.dispatcherKey = key;
+        return this.dispatcher = created;
+    }
+    
+    protected synchronized void forget(String key) {
+        if (dispatcher != null) dispatcher.remove(key);
+    }
+    
+    static boolean isReserved(String key) {
+        return key.startsWith(RESERVED);
     }
 }
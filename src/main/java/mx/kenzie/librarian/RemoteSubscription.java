@@ -0,0 +1,23 @@
+package mx.kenzie.librarian;
+
+import java.rmi.Remote;
+
+/**
+ * Receives changes to the registry on behalf of a subscribed {@link RemoteLibrary}.
+ *
+ * @author Moderocky
+ */
+class RemoteSubscription implements BindingListener {
+    
+    protected final RemoteLibrary library;
+    
+    RemoteSubscription(RemoteLibrary library) {
+        this.library = library;
+    }
+    
+    @Override
+    public void changed(String[] keys, Remote[] stubs) {
+        this.library.apply(keys, stubs);
+    }
+
+}
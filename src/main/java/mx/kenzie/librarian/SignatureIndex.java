@@ -0,0 +1,252 @@
+package mx.kenzie.librarian;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * An index of the methods available from a set of resources, keyed by
+ * method name and erased parameter descriptor.
+ *
+ * Candidates for each signature are kept in registration order, so the first
+ * candidate with an assignable return type is the same match a linear scan
+ * of the resources would have found.
+ *
+ * Candidate arrays are never modified after publication, so lookups are safe
+ * without locking while a single writer updates the index.
+ *
+ * An index may have a parent, the index of a parent library, which is searched for any
+ * lookup this index has no match for. Resources are never copied between the two,
+ * so each index only ever holds its own library's resources.
+ *
+ * @author Moderocky
+ */
+class SignatureIndex {
+    
+    private final Map<Signature, Endpoint[]> signatures = new ConcurrentHashMap<>();
+    private final Map<String, Endpoint[]> names = new ConcurrentHashMap<>();
+    private final SignatureIndex parent;
+    
+    SignatureIndex() {
+        this(null);
+    }
+    
+    SignatureIndex(final SignatureIndex parent) {
+        this.parent = parent;
+    }
+    
+    void add(final Object resource) {
+        for (final Method method : AccessUtility.getMethods(resource.getClass())) {
+            final Endpoint endpoint = new Endpoint(resource, method);
+            append(signatures, Signature.of(method), endpoint);
+            append(names, method.getName(), endpoint);
+        }
+    }
+    
+    /**
+     * Adds many resources at once, copying each affected candidate array only once.
+     */
+    void addAll(final Collection<?> resources) {
+        final Map<Signature, List<Endpoint>> signatures = new HashMap<>();
+        final Map<String, List<Endpoint>> names = new HashMap<>();
+        for (final Object resource : resources) {
+            for (final Method method : AccessUtility.getMethods(resource.getClass())) {
+                final Endpoint endpoint = new Endpoint(resource, method);
+                signatures.computeIfAbsent(Signature.of(method), key -> new ArrayList<>()).add(endpoint);
+                names.computeIfAbsent(method.getName(), key -> new ArrayList<>()).add(endpoint);
+            }
+        }
+        appendAll(this.signatures, signatures);
+        appendAll(this.names, names);
+    }
+    
+    void remove(final Object resource) {
+        for (final Method method : AccessUtility.getMethods(resource.getClass())) {
+            remove(signatures, Signature.of(method), resource, method);
+            remove(names, method.getName(), resource, method);
+        }
+    }
+    
+    void clear() {
+        signatures.clear();
+        names.clear();
+    }
+    
+    private static <Key> void append(final Map<Key, Endpoint[]> map, final Key key, final Endpoint endpoint) {
+        final Endpoint[] current = map.get(key);
+        if (current == null) map.put(key, new Endpoint[]{endpoint});
+        else {
+            final Endpoint[] endpoints = Arrays.copyOf(current, current.length + 1);
+            endpoints[current.length] = endpoint;
+            map.put(key, endpoints);
+        }
+    }
+    
+    private static <Key> void appendAll(final Map<Key, Endpoint[]> map, final Map<Key, List<Endpoint>> additions) {
+        for (final Map.Entry<Key, List<Endpoint>> entry : additions.entrySet()) {
+            final Endpoint[] current = map.get(entry.getKey());
+            final List<Endpoint> added = entry.getValue();
+            if (current == null) {
+                map.put(entry.getKey(), added.toArray(new Endpoint[0]));
+                continue;
+            }
+            final Endpoint[] endpoints = Arrays.copyOf(current, current.length + added.size());
+            for (int i = 0; i < added.size(); i++) endpoints[current.length + i] = added.get(i);
+            map.put(entry.getKey(), endpoints);
+        }
+    }
+    
+    private static <Key> void remove(final Map<Key, Endpoint[]> map, final Key key, final Object resource, final Method method) {
+        final Endpoint[] current = map.get(key);
+        if (current == null) return;
+        for (int i = 0; i < current.length; i++) {
+            final Endpoint endpoint = current[i];
+            if (endpoint.method() != method || !resource.equals(endpoint.resource())) continue;
+            if (current.length == 1) map.remove(key);
+            else {
+                final Endpoint[] endpoints = new Endpoint[current.length - 1];
+                System.arraycopy(current, 0, endpoints, 0, i);
+                System.arraycopy(current, i + 1, endpoints, i, current.length - i - 1);
+                map.put(key, endpoints);
+            }
+            return;
+        }
+    }
+    
+    Endpoint find(final Method method) {
+        return find(method.getReturnType(), method.getName(), method.getParameterTypes());
+    }
+    
+    Endpoint find(final Class<?> returnType, final String name, final Class<?>... parameters) {
+        final Endpoint endpoint = this.findExact(returnType, name, parameters);
+        if (endpoint != null || parent == null) return endpoint;
+        return parent.find(returnType, name, parameters);
+    }
+    
+    private Endpoint findExact(final Class<?> returnType, final String name, final Class<?>... parameters) {
+        final Endpoint[] endpoints = signatures.get(Signature.of(name, parameters));
+        if (endpoints == null) return null;
+        for (final Endpoint endpoint : endpoints) {
+            if (returnType.isAssignableFrom(endpoint.method().getReturnType())) return endpoint;
+        }
+        return null;
+    }
+    
+    /**
+     * Finds every method with this name and these parameters, whatever its return type,
+     * in registration order. The result is shared and must not be modified.
+     * The parent is not searched.
+     */
+    Endpoint[] candidates(final String name, final Class<?>... parameters) {
+        final Endpoint[] endpoints = signatures.get(Signature.of(name, parameters));
+        return endpoints != null ? endpoints : new Endpoint[0];
+    }
+    
+    /**
+     * Finds the resource method the matcher ranks best for the query method, among those
+     * with one of its names. An exact match under its own name is taken from the signature
+     * index straight away, since no other candidate can score better.
+     *
+     * The query method is matched by its types as seen from the query, which may give
+     * values to the type variables of the interface declaring it.
+     *
+     * The parent is only searched if nothing here matches, so a match in this index
+     * is chosen over any in the parent, however well that one scores.
+     */
+    Endpoint find(final Class<?> query, final Method method, final MethodMatcher matcher) {
+        final Endpoint endpoint = this.findBest(query, method, matcher);
+        if (endpoint != null || parent == null) return endpoint;
+        return parent.find(query, method, matcher);
+    }
+    
+    private Endpoint findBest(final Class<?> query, final Method method, final MethodMatcher matcher) {
+        final Class<?> returnType = AccessUtility.getReturnType(query, method);
+        final Class<?>[] parameters = AccessUtility.getParameterTypes(query, method);
+        final Endpoint exact = this.findExact(returnType, method.getName(), parameters);
+        if (exact != null && matcher.score(returnType, parameters, exact.method()) == 0) return exact;
+        return this.findBest(matcher, matcher.getNames(method), returnType, parameters, endpoint -> true);
+    }
+    
+    /**
+     * Finds the resource method the matcher ranks best for calls with these types, among
+     * those with one of the names that the filter accepts. The parent is not searched.
+     */
+    Endpoint findBest(final MethodMatcher matcher, final String[] names, final Class<?> returnType, final Class<?>[] parameters, final Predicate<Endpoint> filter) {
+        Endpoint best = null;
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < names.length; i++) {
+            final Endpoint[] endpoints = this.names.get(names[i]);
+            if (endpoints == null) continue;
+            for (final Endpoint endpoint : endpoints) {
+                final int score = matcher.score(returnType, parameters, endpoint.method());
+                if (score < 0 || score + i >= lowest || !filter.test(endpoint)) continue;
+                best = endpoint;
+                lowest = score + i;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Finds every resource method that calls with these parameters and return type could be
+     * passed on to. Where a resource has more than one, only the one the matcher ranks best is
+     * included. Matches under the first name come first, in registration order, followed
+     * by any resources matched only under each of the other names in turn, and then by
+     * the parent's matches for any other resources.
+     */
+    Endpoint[] findAll(final MethodMatcher matcher, final String[] names, final Class<?> returnType, final Class<?>... parameters) {
+        final List<Endpoint> found = new ArrayList<>();
+        final List<Integer> scores = new ArrayList<>();
+        for (int n = 0; n < names.length; n++) {
+            final Endpoint[] endpoints = this.names.get(names[n]);
+            if (endpoints == null) continue;
+            search:
+            for (final Endpoint endpoint : endpoints) {
+                final int score = matcher.score(returnType, parameters, endpoint.method());
+                if (score < 0) continue;
+                for (int i = 0; i < found.size(); i++) {
+                    if (found.get(i).resource() != endpoint.resource()) continue;
+                    if (score + n < scores.get(i)) {
+                        found.set(i, endpoint);
+                        scores.set(i, score + n);
+                    }
+                    continue search;
+                }
+                found.add(endpoint);
+                scores.add(score + n);
+            }
+        }
+        if (parent == null) return found.toArray(new Endpoint[0]);
+        inherited:
+        for (final Endpoint endpoint : parent.findAll(matcher, names, returnType, parameters)) {
+            for (final Endpoint local : found) {
+                if (local.resource() == endpoint.resource()) continue inherited;
+            }
+            found.add(endpoint);
+        }
+        return found.toArray(new Endpoint[0]);
+    }
+    
+    record Signature(String name, String parameters) {
+        
+        static Signature of(final Method method) {
+            return of(method.getName(), method.getParameterTypes());
+        }
+        
+        static Signature of(final String name, final Class<?>... parameters) {
+            final StringBuilder builder = new StringBuilder();
+            for (final Class<?> parameter : parameters) {
+                builder.append(parameter.descriptorString());
+            }
+            return new Signature(name, builder.toString());
+        }
+    
+    }
+
+}
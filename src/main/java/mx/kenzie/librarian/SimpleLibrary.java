@@ -1,60 +1,264 @@
 package mx.kenzie.librarian;
 
-import mx.kenzie.librarian.error.UnmatchedEndpointException;
-
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * A simple library implementation that stores resources in a list.
  * Also provides a basic query system.
  *
+ * Reads and queries work from a copy-on-write snapshot and never block. Changes are
+ * serialised, and each one advances the library's version and that of its children.
+ *
+ * Query endpoints are proxies that call the resource method the {@link MethodMatcher}
+ * ranks best for each query method, through method handles by default.
+ * Live, broadcast and lazy endpoints are described where they are configured or looked for.
+ *
  * @author Moderocky
  */
 public class SimpleLibrary implements Library<Object> {
     
-    protected final List<Object> resources = new ArrayList<>();
+    protected final List<Object> resources = new CopyOnWriteArrayList<>();
+    protected final Object lock = new Object();
+    protected volatile int version;
+    protected final InvocationStrategy strategy;
+    protected final LibraryMetrics metrics;
+    protected volatile boolean strict;
+    protected volatile boolean lazy;
+    protected volatile MethodMatcher matcher = MethodMatcher.STRUCTURAL;
+    protected final SimpleLibrary parent;
+    protected final Set<SimpleLibrary> children = Collections.newSetFromMap(new WeakHashMap<>());
+    
+    public SimpleLibrary() {
+        this(InvocationStrategy.METHOD_HANDLE);
+    }
+    
+    public SimpleLibrary(InvocationStrategy strategy) {
+        this(strategy, null);
+    }
+    
+    public SimpleLibrary(InvocationStrategy strategy, LibraryMetrics metrics) {
+        this(null, strategy, metrics);
+    }
+    
+    /**
+     * Creates a library that falls back on the parent, if there is one, for lookups its own
+     * resources cannot satisfy. The parent holds its children weakly, so a child
+     * that is no longer used can be collected.
+     */
+    protected SimpleLibrary(SimpleLibrary parent, InvocationStrategy strategy, LibraryMetrics metrics) {
+        this.parent = parent;
+        this.strategy = strategy;
+        this.metrics = metrics;
+        this.index = new SignatureIndex(parent != null ? parent.index : null);
+        if (parent == null) return;
+        this.matcher = parent.matcher;
+        synchronized (parent.lock) {
+            parent.children.add(this);
+        }
+    }
+    
+    final SignatureIndex index;
+    final TypeIndex types = new TypeIndex(resources);
+    final Map<Class<?>, LiveEndpoint> live = new ConcurrentHashMap<>();
+    final AsyncDispatcher async = new AsyncDispatcher();
+    
+    /**
+     * Creates a library whose lookups fall back on this one's resources. The child has the same
+     * strategy, metrics and matcher, and its own resources, settings and endpoints.
+     */
+    public SimpleLibrary createChild() {
+        return new SimpleLibrary(this, strategy, metrics);
+    }
+    
+    /**
+     * Gets the library this one falls back on, or null if it has no parent.
+     */
+    public SimpleLibrary getParent() {
+        return parent;
+    }
+    
+    /**
+     * Sets whether the library is strict, in which case looking for an endpoint fails with
+     * an {@link mx.kenzie.librarian.error.UnmatchedEndpointException} if any query method
+     * has no match. Otherwise unmatched methods throw only when they are called.
+     * Live and broadcast endpoints are never strict. This applies from the next query,
+     * including to queries that were looked for before.
+     */
+    public void setStrict(boolean strict) {
+        synchronized (lock) {
+            this.strict = strict;
+            version++;
+        }
+    }
+    
+    public boolean isStrict() {
+        return strict;
+    }
+    
+    /**
+     * Sets whether the library is lazy, in which case endpoints from {@link #lookFor(Class)}
+     * bind each query method the first time it is called, against the resources registered
+     * at that moment, rather than all at once when the endpoint is looked for.
+     * A strict library always binds eagerly, since it must match every method up front.
+     * This applies from the next query, including to queries that were looked for before.
+     */
+    public void setLazy(boolean lazy) {
+        synchronized (lock) {
+            this.lazy = lazy;
+            version++;
+        }
+    }
+    
+    public boolean isLazy() {
+        return lazy;
+    }
+    
+    /**
+     * Whether endpoints are bound lazily, which a strict library never does.
+     */
+    protected boolean bindsLazily() {
+        return lazy && !strict;
+    }
+    
+    /**
+     * Sets how query methods are matched to resource methods, see {@link MethodMatcher}.
+     * Live endpoints are bound again straight away; others use it from their next query.
+     */
+    public void setMatcher(MethodMatcher matcher) {
+        synchronized (lock) {
+            this.matcher = matcher;
+            version++;
+            this.rebind();
+        }
+    }
+    
+    public MethodMatcher getMatcher() {
+        return matcher;
+    }
+    
+    /**
+     * Sets the executor that asynchronous query methods run their resource calls on.
+     * If null, each call gets a virtual thread where the runtime supports them, or
+     * otherwise runs on a shared pool of daemon threads.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.async.executor = executor;
+    }
+    
+    /**
+     * Sets how many asynchronous calls may run on each resource at once. Later calls wait
+     * until one finishes. This applies to existing endpoints from their next call.
+     */
+    public void setAsyncLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("Limit must be positive.");
+        this.async.limit = limit;
+    }
     
     @Override
     public boolean register(Object object) {
-        return resources.add(object);
+        synchronized (lock) {
+            types.begin();
+            try {
+                if (!resources.add(object)) return false;
+                index.add(object);
+                types.add(object);
+            } finally {
+                types.end();
+            }
+            this.changed(object, null, parent == null);
+            return true;
+        }
+    }
+    
+    /**
+     * Registers the resources as a single change, so the library's version advances once
+     * and each live endpoint is bound again once.
+     */
+    @Override
+    public boolean registerAll(Collection<?> objects) {
+        if (objects.isEmpty()) return false;
+        synchronized (lock) {
+            types.begin();
+            try {
+                resources.addAll(objects);
+                index.addAll(objects);
+                types.addAll(objects);
+            } finally {
+                types.end();
+            }
+            this.changed(null, null, false);
+            return true;
+        }
     }
     
     @Override
     public boolean unregister(Object object) {
-        return resources.remove(object);
+        synchronized (lock) {
+            types.begin();
+            try {
+                if (!resources.remove(object)) return false;
+                index.remove(object);
+                types.remove(object);
+            } finally {
+                types.end();
+            }
+            this.changed(null, object, false);
+            return true;
+        }
     }
     
     @Override
     public boolean unregisterAll(Class<? extends Object> type) {
         boolean changed = false;
-        for (final Object resource : new ArrayList<>(resources)) {
-            if (type.isInstance(resource)) {
-                changed = true;
-                resources.remove(resource);
+        synchronized (lock) {
+            types.begin();
+            try {
+                for (final Object resource : resources) {
+                    if (type.isInstance(resource)) {
+                        changed = true;
+                        resources.remove(resource);
+                        index.remove(resource);
+                        types.remove(resource);
+                    }
+                }
+            } finally {
+                types.end();
             }
+            if (changed) this.changed(null, null, false);
         }
         return changed;
     }
     
     @Override
     public boolean unregisterAll() {
-        final boolean changed = resources.size() > 0;
-        resources.clear();
-        return changed;
+        return this.empty() > 0;
     }
     
     @Override
     public int empty() {
-        final int size = resources.size();
-        resources.clear();
-        return size;
+        synchronized (lock) {
+            final int size = resources.size();
+            types.begin();
+            try {
+                resources.clear();
+                index.clear();
+                types.clear();
+            } finally {
+                types.end();
+            }
+            this.changed(null, null, false);
+            return size;
+        }
     }
     
     @Override
@@ -69,56 +273,161 @@ public class SimpleLibrary implements Library<Object> {
     
     @Override
     public <Query> Query getResource(Class<Query> type) {
-        for (final Object resource : resources) {
-            if (type.isInstance(resource)) return (Query) resource;
-        }
-        return null;
+        final Object[] found = types.get(type);
+        if (found.length == 0) return parent != null ? parent.getResource(type) : null;
+        return (Query) found[0];
     }
     
+    /**
+     * Finds every resource assignable to the given type, this library's own first, followed by
+     * those of its ancestors. The result may be cached and shared between callers,
+     * so it must not be modified.
+     */
     @Override
     public <Query> Query[] getAllResources(Class<Query> type) {
-        final List<Object> objects = new ArrayList<>();
-        for (final Object resource : resources) {
-            if (type.isInstance(resource)) objects.add(resource);
-        }
-        return objects.toArray((Query[]) Array.newInstance(type, 0));
+        final Query[] found = (Query[]) types.get(type);
+        if (parent == null) return found;
+        final Query[] inherited = parent.getAllResources(type);
+        if (inherited.length == 0) return found;
+        if (found.length == 0) return inherited;
+        final Query[] resources = Arrays.copyOf(found, found.length + inherited.length);
+        System.arraycopy(inherited, 0, resources, found.length, inherited.length);
+        return resources;
     }
     
     @Override
     public <Query> Query lookFor(Class<? extends Query> type) {
         assert type.isInterface();
-        class Handler implements InvocationHandler {
-            final Map<Method, Endpoint> map = new HashMap<>();
-            
-            @Override
-            public Object invoke(Object proxy, Method method, Object... args) {
-                final Endpoint endpoint = map.get(method);
-                if (endpoint == null)
-                    throw new UnmatchedEndpointException("Unmatched library method: '" + method.getName() + "'");
-                return endpoint.invoke(args);
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        if (strict) this.report(type).require();
+        final Query endpoint = this.bindsLazily()
+            ? LazyEndpoint.create(type, index, matcher, strategy, metrics, async)
+            : ProxyEndpoint.create(type, index, matcher, strategy, metrics, async, false);
+        this.bound(type, event, start, false);
+        return endpoint;
+    }
+    
+    /**
+     * Describes the endpoint that {@link #lookFor(Class)} would bind for the query.
+     */
+    @Override
+    public BindingReport report(Class<?> type) {
+        final Method[] methods = AccessUtility.getQueryMethods(type);
+        final Endpoint[] endpoints = new Endpoint[methods.length];
+        for (int i = 0; i < methods.length; i++) endpoints[i] = this.find(type, methods[i]);
+        return BindingReport.of(type, methods, endpoints);
+    }
+    
+    /**
+     * Finds the resource method that {@link #lookFor(Class)} binds a query method to.
+     */
+    protected Endpoint find(Class<?> type, Method method) {
+        return ProxyEndpoint.find(index, matcher, async, type, method);
+    }
+    
+    /**
+     * Finds a live endpoint for the query, which is bound again whenever a resource is
+     * registered or removed, so it never needs to be looked up again. The same endpoint is
+     * returned for each call with the same query.
+     * Live endpoints always call resources through method handles.
+     */
+    @Override
+    public <Query> Query lookForLive(Class<? extends Query> type) {
+        assert type.isInterface();
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final LiveEndpoint known = live.get(type);
+        if (known != null) {
+            this.bound(type, event, start, true);
+            return (Query) known.endpoint;
+        }
+        final LiveEndpoint created;
+        synchronized (lock) {
+            final LiveEndpoint existing = live.get(type);
+            if (existing != null) {
+                this.bound(type, event, start, true);
+                return (Query) existing.endpoint;
             }
+            created = this.createLive(type);
+            created.bind(index, matcher, metrics);
+            created.endpoint = this.buildLive(created);
+            live.put(type, created);
         }
-        final Handler handler = new Handler();
-        for (final Method method : type.getDeclaredMethods()) {
-            for (final Object resource : this.getResources()) {
-                final Method match = AccessUtility.getMatchingMethod(resource, method);
-                if (match == null) continue;
-                AccessUtility.access(match);
-                handler.map.put(method, new Endpoint(resource, match));
-                break;
+        this.bound(type, event, start, false);
+        return (Query) created.endpoint;
+    }
+    
+    /**
+     * Finds a broadcast endpoint for the query, bound to every resource that matches each
+     * of its methods. Like normal endpoints, it is not bound again when resources change.
+     * Broadcast endpoints always call resources through method handles.
+     */
+    @Override
+    public <Query> Query lookForBroadcast(Class<? extends Query> type, Executor executor) {
+        assert type.isInterface();
+        final BindingEvent event = new BindingEvent();
+        event.begin();
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final Query endpoint = BroadcastEndpoint.create(type, index, matcher, metrics, executor, false);
+        this.bound(type, event, start, false);
+        return endpoint;
+    }
+    
+    protected LiveEndpoint createLive(Class<?> type) {
+        return new LiveEndpoint(type, AccessUtility.getQueryMethods(type));
+    }
+    
+    protected Object buildLive(LiveEndpoint live) {
+        return ProxyEndpoint.createLive(live, metrics);
+    }
+    
+    /**
+     * Brings every live endpoint up to date with the resources. Must be called under the lock.
+     */
+    protected void rebind() {
+        for (final LiveEndpoint endpoint : live.values()) endpoint.bind(index, matcher, metrics);
+    }
+    
+    /**
+     * Advances the version and brings the live endpoints up to date after a change to the
+     * resources of this library or an ancestor, then does the same for each child under its
+     * own lock. Only the query methods a single added or removed resource could affect are
+     * bound again, and an added resource is only taken to come after every other if it was
+     * added to a library with no parent; otherwise each method is bound again.
+     * Must be called under the lock.
+     */
+    protected void changed(Object added, Object removed, boolean last) {
+        version++;
+        for (final LiveEndpoint endpoint : live.values()) {
+            if (added != null && last) endpoint.added(index, matcher, metrics, added);
+            else if (removed != null) endpoint.removed(index, matcher, metrics, removed);
+            else endpoint.bind(index, matcher, metrics);
+        }
+        for (final SimpleLibrary child : List.copyOf(children)) {
+            synchronized (child.lock) {
+                child.changed(added, removed, last);
             }
         }
-        return (Query) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[]{type}, handler);
+    }
+    
+    void bound(Class<?> type, BindingEvent event, long start, boolean cached) {
+        if (metrics != null) metrics.bound(type, System.nanoTime() - start, cached);
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.query = type;
+        event.library = this.getClass();
+        event.cached = cached;
+        event.commit();
     }
     
     @Override
     public Method lookForMethod(Class<?> returnType, String name, Class<?>... parameters) {
-        for (final Object resource : this.getResources()) {
-            final Method match = AccessUtility.getMatchingMethod(resource, returnType, name, parameters);
-            if (match == null) continue;
-            AccessUtility.access(match);
-            return match;
-        }
-        return null;
+        final Endpoint endpoint = index.find(returnType, name, parameters);
+        if (endpoint == null) return null;
+        AccessUtility.access(endpoint.method());
+        return endpoint.method();
     }
 }
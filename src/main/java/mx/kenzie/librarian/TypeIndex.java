@@ -0,0 +1,153 @@
+package mx.kenzie.librarian;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A cache of the resources assignable to each queried type, held as
+ * ready-made typed arrays.
+ *
+ * A type's shelf is built the first time it is queried, and is then updated
+ * incrementally as resources are added and removed, so repeated queries are
+ * a single class-value lookup with no allocation.
+ *
+ * Shelves are only held strongly through the class value, so a shelf goes once its
+ * type is unloaded, and every shelf is dropped when the index is cleared.
+ *
+ * A new shelf is built without locking, from a snapshot of the resources. The owner
+ * brackets each change to the resources with {@link #begin()} and {@link #end()}, and
+ * a shelf built while a change was under way is thrown away and built again.
+ *
+ * @author Moderocky
+ */
+class TypeIndex {
+    
+    private final List<?> resources;
+    private final Queue<Reference<Shelf>> shelves = new ConcurrentLinkedQueue<>();
+    private volatile int version; // Odd while a change is under way.
+    private final ClassValue<Shelf> types = new ClassValue<>() {
+        @Override
+        protected Shelf computeValue(Class<?> type) {
+            while (true) {
+                final int version = TypeIndex.this.version;
+                if ((version & 1) == 0) {
+                    final Shelf shelf = new Shelf(type, resources);
+                    final Reference<Shelf> reference = new WeakReference<>(shelf);
+                    shelves.add(reference);
+                    if (version == TypeIndex.this.version) return shelf;
+                    shelves.remove(reference);
+                }
+                Thread.onSpinWait();
+            }
+        }
+    };
+    
+    TypeIndex(List<?> resources) {
+        this.resources = resources;
+    }
+    
+    /**
+     * Marks the start of a change, before the resources are modified.
+     * Must be called by the single writer.
+     */
+    void begin() {
+        version++;
+    }
+    
+    /**
+     * Marks the end of a change, once the resources and the shelves are both up to date.
+     */
+    void end() {
+        version++;
+    }
+    
+    Object[] get(final Class<?> type) {
+        return types.get(type).resources;
+    }
+    
+    void add(final Object resource) {
+        for (final Shelf shelf : this.getShelves()) {
+            if (shelf.type.isInstance(resource)) shelf.add(resource);
+        }
+    }
+    
+    void addAll(final Collection<?> resources) {
+        for (final Shelf shelf : this.getShelves()) shelf.addAll(resources);
+    }
+    
+    void remove(final Object resource) {
+        for (final Shelf shelf : this.getShelves()) {
+            if (shelf.type.isInstance(resource)) shelf.remove(resource);
+        }
+    }
+    
+    void clear() {
+        for (final Shelf shelf : this.getShelves()) types.remove(shelf.type);
+        shelves.clear();
+    }
+    
+    /**
+     * Gets the shelves that are still held, forgetting any that have been collected.
+     */
+    private List<Shelf> getShelves() {
+        final List<Shelf> list = new ArrayList<>();
+        for (final Iterator<Reference<Shelf>> iterator = shelves.iterator(); iterator.hasNext(); ) {
+            final Shelf shelf = iterator.next().get();
+            if (shelf == null) iterator.remove();
+            else list.add(shelf);
+        }
+        return list;
+    }
+    
+    static final class Shelf {
+        final Class<?> type;
+        volatile Object[] resources;
+        
+        Shelf(Class<?> type, List<?> resources) {
+            this.type = type;
+            int count = 0;
+            final Object[] found = (Object[]) Array.newInstance(type, resources.size());
+            for (final Object resource : resources) {
+                if (type.isInstance(resource)) found[count++] = resource;
+            }
+            this.resources = Arrays.copyOf(found, count);
+        }
+        
+        void add(final Object resource) {
+            final Object[] current = resources;
+            final Object[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = resource;
+            this.resources = next;
+        }
+        
+        void addAll(final Collection<?> resources) {
+            final Object[] current = this.resources;
+            final Object[] next = Arrays.copyOf(current, current.length + resources.size());
+            int count = current.length;
+            for (final Object resource : resources) {
+                if (type.isInstance(resource)) next[count++] = resource;
+            }
+            if (count > current.length) this.resources = Arrays.copyOf(next, count);
+        }
+        
+        void remove(final Object resource) {
+            final Object[] current = resources;
+            for (int i = 0; i < current.length; i++) {
+                if (!resource.equals(current[i])) continue;
+                final Object[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                this.resources = next;
+                return;
+            }
+        }
+    }
+
+}
@@ -1,9 +1,30 @@
 package mx.kenzie.librarian.test;
 
+import mx.kenzie.librarian.Alias;
+import mx.kenzie.librarian.Broadcast;
 import mx.kenzie.librarian.CompiledEndpointLibrary;
+import mx.kenzie.librarian.EndpointCounter;
 import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.MethodMatcher;
+import mx.kenzie.librarian.RecordingMetrics;
+import mx.kenzie.librarian.SimpleLibrary;
+import mx.kenzie.librarian.Reduction;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
 public class CompiledEndpointLibraryTest {
     
     @Test
@@ -58,6 +79,645 @@ public class CompiledEndpointLibraryTest {
         assert bob.b() == 2;
         final Bob two = library.lookFor(Bob.class);
         assert bob.getClass() == two.getClass();
+        assert bob == two;
+    }
+    
+    @Test
+    public void rebind() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        final Bob bob = library.lookFor(Bob.class);
+        assert bob.a() == 1;
+        assert library.unregister(alice);
+        assert library.register(new Sarah());
+        final Bob two = library.lookFor(Bob.class);
+        assert two != bob;
+        assert two.a() == 3;
+        assert two.b() == 4;
+        assert library.register(new Alice());
+        final Bob three = library.lookFor(Bob.class);
+        assert three != two;
+        assert three.getClass() == two.getClass();
+        assert three.a() == 3;
+    }
+    
+    @Test
+    public void live() {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        for (final Library<Object> library : new Library[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(metrics)}) {
+            final Bob bob = library.lookForLive(Bob.class);
+            assert library.lookForLive(Bob.class) == bob;
+            try {
+                bob.a();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+            final Alice alice = new Alice();
+            assert library.register(alice);
+            assert bob.a() == 1;
+            assert bob.b() == 2;
+            assert library.unregister(alice);
+            assert library.register(new Sarah());
+            assert bob.a() == 3;
+            assert bob.b() == 4;
+            assert library.register(new Jeremy());
+            assert bob.a() == 3;
+            assert bob.c() == 5;
+            assert library.empty() == 2;
+            try {
+                bob.c();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+        }
+        assert metrics.getCounters().size() == 4;
+    }
+    
+    @Test
+    public void broadcast() {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        for (final Library<Object> library : new Library[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(metrics)}) {
+            final Plugins empty = library.lookForBroadcast(Plugins.class);
+            assert empty.name().length == 0;
+            assert empty.online(1) == 0;
+            assert !empty.has(1);
+            assert empty.ready();
+            assert empty.owner(1) == null;
+            try {
+                empty.version();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+            final Alpha alpha = new Alpha();
+            assert library.register(alpha);
+            assert library.register(new Beta());
+            assert library.register(new Jeremy());
+            final Plugins plugins = library.lookForBroadcast(Plugins.class);
+            assert library.lookForBroadcast(Plugins.class) == plugins;
+            assert Arrays.equals(plugins.name(), new String[]{"alpha", "beta"});
+            assert plugins.online(3) == 9;
+            assert plugins.has(2);
+            assert !plugins.has(3);
+            assert !plugins.ready();
+            assert plugins.owner(1).equals("beta");
+            assert plugins.owner(2) == null;
+            assert plugins.version() == 1;
+            plugins.reset();
+            assert alpha.resets == 1;
+        }
+        assert metrics.getCounters().size() == 7;
+    }
+    
+    @Test
+    public void async() throws Exception {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        for (final Library<Object> library : new Library[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(metrics)}) {
+            assert library.register(new Ledger());
+            final Accounts accounts = library.lookFor(Accounts.class);
+            assert accounts.rate().get().floatValue() == 1.5F;
+            assert accounts.name().toCompletableFuture().get().equals("ledger");
+            assert accounts.count((short) 4).get() == 5;
+            accounts.deposit(3, 10, 2).get();
+            assert accounts.balance(3).get() == 20;
+            assert accounts.last() == 3;
+        }
+    }
+    
+    @Test
+    public void bulk() {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        for (final Library<Object> library : new Library[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(metrics)}) {
+            assert library.registerAll(List.of(new Alice(), new Jeremy()));
+            final Object[] endpoints = library.lookForAll(Bob.class, Plugins.class, Bob.class, Accounts.class);
+            assert endpoints.length == 4;
+            assert endpoints[0] == endpoints[1] && endpoints[0] == endpoints[2];
+            final Bob bob = (Bob) endpoints[0];
+            assert bob.a() == 1;
+            assert bob.d() == 6;
+            try {
+                ((Plugins) endpoints[1]).name();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+            assert library.lookFor(Bob.class) == bob;
+            assert library.lookForAll(Bob.class)[0] == bob;
+            assert library.register(new Ledger());
+            assert library.lookForAll(Bob.class)[0] != bob;
+        }
+        assert metrics.getCounters().size() == 17;
+    }
+    
+    @Test
+    public void strict() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        assert library.register(new Alice());
+        assert library.report(Bob.class).getUnmatched().size() == 2;
+        library.setStrict(true);
+        try {
+            library.lookFor(Bob.class);
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert ex.getMessage().contains("Bob.c()") && ex.getMessage().contains("Bob.d()");
+        }
+        assert library.register(new Jeremy());
+        assert library.report(Bob.class).require().getMatched().size() == 4;
+        assert library.lookFor(Bob.class).d() == 6;
+    }
+    
+    @Test
+    public void strictAfterLookup() {
+        //region Stubs
+        interface Q {
+            int a();
+            
+            int missing();
+        }
+        
+        class Alice {
+            public int a() {
+                return 1;
+            }
+        }
+        //endregion
+        for (final SimpleLibrary library : new SimpleLibrary[]{new SimpleLibrary(), new CompiledEndpointLibrary()}) {
+            assert library.register(new Alice());
+            final Q eager = library.lookFor(Q.class);
+            assert eager.a() == 1;
+            library.setStrict(true);
+            try {
+                library.lookFor(Q.class);
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert ex.getMessage().contains("Q.missing()");
+            }
+            library.setStrict(false);
+            library.setLazy(true);
+            final Q lazy = library.lookFor(Q.class);
+            assert lazy != eager;
+            assert lazy.a() == 1;
+        }
+    }
+    
+    @Test
+    public void local() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b();
+        }
+        
+        class Alice {
+            public int a() {
+                return 1;
+            }
+            
+            int b() {
+                return 2;
+            }
+        }
+        //endregion
+        assert library.register(new Alice());
+        final Bob bob = library.lookFor(Bob.class);
+        assert bob != null;
+        assert bob.a() == 1;
+        assert bob.b() == 2;
+    }
+    
+    @Test
+    public void primitives() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        assert library.register(new Ledger());
+        final Economy economy = library.lookFor(Economy.class);
+        economy.deposit(3, 10L, 2.5);
+        assert economy.balance(3) == 25.0;
+        assert economy.count((short) 4) == 5L;
+        assert economy.rate() == 1.5F;
+        assert economy.name().equals("ledger");
+        assert economy.last() == 3L;
+        economy.reset();
+        assert economy.balance(3) == 0;
+    }
+    
+    @Test
+    public void primitivesLocal() {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        //region Stubs
+        interface Economy {
+            double balance(int id);
+            
+            long count(short value);
+            
+            void reset();
+        }
+        
+        class Ledger {
+            double balance;
+            
+            float balance(long id) {
+                return (float) balance + id;
+            }
+            
+            int count(int value) {
+                return value + 1;
+            }
+            
+            double reset() {
+                return balance = 0;
+            }
+        }
+        //endregion
+        assert library.register(new Ledger());
+        final Economy economy = library.lookFor(Economy.class);
+        assert economy.balance(2) == 2.0;
+        assert economy.count((short) 1) == 2L;
+        economy.reset();
+    }
+    
+    @Test
+    public void unloading() throws InterruptedException {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        assert library.register(new Alice());
+        Bob bob = library.lookFor(Bob.class);
+        assert bob.a() == 1;
+        final WeakReference<Class<?>> reference = new WeakReference<>(bob.getClass());
+        bob = null;
+        assert library.empty() > 0;
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert reference.get() == null;
+    }
+    
+    @Test
+    public void unloadingUnregistered() throws InterruptedException {
+        final Library<Object> library = new CompiledEndpointLibrary();
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        assert library.register(new Sarah());
+        Bob bob = library.lookFor(Bob.class);
+        assert bob.a() == 1;
+        final WeakReference<Class<?>> reference = new WeakReference<>(bob.getClass());
+        bob = null;
+        assert library.unregister(alice);
+        assert library.lookFor(Bob.class).a() == 3;
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert reference.get() == null;
+    }
+    
+    @Test
+    public void persistent() throws IOException {
+        final Path directory = Files.createTempDirectory("librarian");
+        final CompiledEndpointLibrary first = new CompiledEndpointLibrary(directory);
+        assert first.register(new Alice());
+        assert first.lookFor(Bob.class).b() == 2;
+        final Path[] entries;
+        try (final Stream<Path> stream = Files.list(directory)) {
+            entries = stream.toArray(Path[]::new);
+        }
+        assert entries.length == 1;
+        final long modified = Files.getLastModifiedTime(entries[0]).toMillis();
+        final CompiledEndpointLibrary second = new CompiledEndpointLibrary(directory);
+        assert second.register(new Alice());
+        final Bob bob = second.lookFor(Bob.class);
+        assert bob.a() == 1;
+        assert bob.b() == 2;
+        assert Files.getLastModifiedTime(entries[0]).toMillis() == modified;
+        final CompiledEndpointLibrary third = new CompiledEndpointLibrary(directory);
+        assert third.register(new Sarah());
+        assert third.lookFor(Bob.class).a() == 3;
+        try (final Stream<Path> stream = Files.list(directory)) {
+            assert stream.count() == 2;
+        }
+    }
+    
+    @Test
+    public void metrics() throws NoSuchMethodException {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final Library<Object> library = new CompiledEndpointLibrary(metrics);
+        class Jane {
+            public int d() {
+                return 6;
+            }
+        }
+        assert library.register(new Alice());
+        assert library.register(new Jane());
+        final Bob bob = library.lookFor(Bob.class);
+        assert bob.d() == 6;
+        assert metrics.getCounter(Bob.class.getMethod("d")).getCalls() == 1;
+        assert bob.a() == 1;
+        assert bob.a() == 1;
+        assert bob.b() == 2;
+        assert library.lookFor(Bob.class) == bob;
+        final EndpointCounter counter = metrics.getCounter(Bob.class.getMethod("a"));
+        assert counter.getCalls() == 2;
+        assert counter.getTotalTime() >= 0;
+        assert Arrays.stream(counter.getHistogram()).sum() == 2;
+        assert metrics.getCounter(Bob.class.getMethod("b")).getCalls() == 1;
+        assert metrics.getBindings() == 2;
+        assert metrics.getCacheHitRate() == 0.5;
+        assert metrics.getUnmatched().contains(Bob.class.getMethod("c"));
+        try {
+            bob.c();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert metrics.getCounter(Bob.class.getMethod("c")).getFailures() == 1;
+        }
+    }
+    
+    @Test
+    public void metricsFailure() throws NoSuchMethodException {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary(metrics);
+        //region Stubs
+        interface Broken {
+            int a();
+        }
+        
+        class Thrower {
+            public int a() {
+                throw new IllegalStateException();
+            }
+        }
+        //endregion
+        assert library.register(new Thrower());
+        final Broken[] endpoints = {library.lookFor(Broken.class), library.lookForLive(Broken.class), library.lookForBroadcast(Broken.class)};
+        for (final Broken endpoint : endpoints) {
+            try {
+                endpoint.a();
+                assert false;
+            } catch (IllegalStateException ex) {
+                assert true;
+            }
+        }
+        final EndpointCounter counter = metrics.getCounter(Broken.class.getMethod("a"));
+        assert counter.getCalls() == 3;
+        assert counter.getFailures() == 3;
+    }
+    
+    @Test
+    public void declarations() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        final Hosting live = library.lookForLive(Hosting.class);
+        try {
+            live.greet();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        final Host host = new Host();
+        assert library.register(host);
+        final Hosting hosting = library.lookFor(Hosting.class);
+        assert hosting.greet().equals("hello");
+        assert hosting.twice(3) == 6;
+        assert live.greet().equals("hello");
+        assert live.twice(4) == 8;
+        final Hosting broadcast = library.lookForBroadcast(Hosting.class);
+        assert broadcast.greet().equals("hello");
+        assert broadcast.twice(5) == 10;
+        assert library.unregister(host);
+        try {
+            live.greet();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        assert hosting.greet().equals("hello");
+        assert library.register(new Host());
+        assert live.greet().equals("hello");
+    }
+    
+    @Test
+    public void hierarchy() {
+        for (final CompiledEndpointLibrary library : new CompiledEndpointLibrary[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(new RecordingMetrics())}) {
+            library.setStrict(true);
+            assert library.register(new Person());
+            final Member member = library.lookFor(Member.class);
+            assert !Proxy.isProxyClass(member.getClass());
+            assert member.name().equals("alice");
+            member.rename("bob");
+            assert member.name().equals("bob");
+            assert member.describe().equals("named bob");
+            assert member.rank() == 0;
+            assert member.id().equals("7");
+            assert ((Identified) member).id().equals("7");
+            assert ((Named<?>) member).name().equals("bob");
+            assert library.report(Member.class).isComplete();
+            assert library.register(new Ranked());
+            assert ((Member) library.lookFor(Member.class)).rank() == 3;
+            final Member broadcast = library.lookForBroadcast(Member.class);
+            assert broadcast.rank() == 3;
+            assert broadcast.describe().equals("named bob");
+            assert ((Identified) broadcast).id().equals("7");
+            library.setStrict(false);
+            final Object[] endpoints = library.lookForAll(Member.class, Wallet.class);
+            assert ((Identified) endpoints[0]).id().equals("7");
+            assert ((Member) endpoints[0]).describe().equals("named bob");
+        }
+    }
+    
+    @Test
+    public void children() {
+        final CompiledEndpointLibrary parent = new CompiledEndpointLibrary();
+        final CompiledEndpointLibrary child = parent.createChild();
+        assert child.getParent() == parent;
+        final Alice alice = new Alice();
+        assert parent.register(alice);
+        final Bob shared = parent.lookFor(Bob.class);
+        assert child.register(new Jeremy());
+        assert child.resourceCount() == 1;
+        assert child.getResource(Alice.class) == alice;
+        assert parent.getResource(Jeremy.class) == null;
+        final Bob bob = child.lookFor(Bob.class);
+        assert bob.a() == 1;
+        assert bob.d() == 6;
+        assert child.lookFor(Bob.class) == bob;
+        assert parent.lookFor(Bob.class) == shared;
+        try {
+            shared.d();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        final Bob live = child.lookForLive(Bob.class);
+        assert live.a() == 1;
+        assert parent.unregister(alice);
+        assert child.lookFor(Bob.class) != bob;
+        assert bob.a() == 1;
+        try {
+            live.a();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        assert parent.register(alice);
+        assert live.a() == 1;
+        final Object[] endpoints = child.lookForAll(Bob.class, Wallet.class);
+        assert ((Bob) endpoints[0]).c() == 5;
+        try {
+            ((Bob) parent.createChild().lookFor(Bob.class)).d();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+    }
+    
+    @Test
+    public void lazy() throws NoSuchMethodException {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        for (final CompiledEndpointLibrary library : new CompiledEndpointLibrary[]{new CompiledEndpointLibrary(), new CompiledEndpointLibrary(metrics)}) {
+            library.setLazy(true);
+            assert library.register(new Alice());
+            final Bob bob = library.lookFor(Bob.class);
+            assert library.lookFor(Bob.class) == bob;
+            assert bob.a() == 1;
+            try {
+                bob.c();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+            assert library.register(new Jeremy());
+            assert library.lookFor(Bob.class) != bob;
+            assert bob.d() == 6;
+            try {
+                bob.c();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+            assert ((Bob) library.lookFor(Bob.class)).c() == 5;
+            final Object[] endpoints = library.lookForAll(Bob.class, Wallet.class);
+            assert ((Bob) endpoints[0]).d() == 6;
+            assert library.register(new Bank());
+            assert ((Wallet) library.lookFor(Wallet.class)).name().equals("bank");
+        }
+        assert metrics.getUnmatched().contains(Bob.class.getMethod("c"));
+        assert metrics.getCounter(Bob.class.getMethod("a")).getCalls() == 1;
+    }
+    
+    @Test
+    public void aliasedGroup() {
+        for (final Class<?>[] order : new Class<?>[][]{{Purse.class, Pocket.class}, {Pocket.class, Purse.class}}) {
+            final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+            assert library.register(new Teller());
+            final Object[] endpoints = library.lookForAll(order);
+            final Pocket pocket = (Pocket) endpoints[order[0] == Pocket.class ? 0 : 1];
+            final Purse purse = (Purse) endpoints[order[0] == Purse.class ? 0 : 1];
+            assert pocket.balance() == 4;
+            try {
+                purse.balance();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+        }
+    }
+    
+    @Test
+    public void matching() {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        assert library.register(new Vault());
+        assert library.register(new Bank());
+        final Wallet wallet = library.lookFor(Wallet.class);
+        assert wallet.getBalance("alice") == 10;
+        assert wallet.count(4) == 5L;
+        assert wallet.total(2) == 4;
+        assert wallet.letter('a') == 97;
+        wallet.deposit(3);
+        assert wallet.name().equals("bank");
+        library.setMatcher(MethodMatcher.EXACT);
+        final Wallet exact = library.lookFor(Wallet.class);
+        assert exact != wallet;
+        assert library.report(Wallet.class).getUnmatched().size() == 4;
+        assert exact.getBalance("alice") == 10;
+        try {
+            exact.count(4);
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+    }
+    
+    @Test
+    public void linkedDefaults() {
+        //region Stubs
+        interface Q {
+            int a();
+            
+            default int b() {
+                return 5;
+            }
+        }
+        
+        class Jane {
+            public int a() {
+                return 1;
+            }
+        }
+        
+        class Kate {
+            public int b() {
+                return 4;
+            }
+        }
+        //endregion
+        for (final SimpleLibrary library : new SimpleLibrary[]{new SimpleLibrary(), new CompiledEndpointLibrary()}) {
+            assert library.register(new Jane());
+            final Q live = library.lookForLive(Q.class);
+            assert live.a() == 1;
+            assert live.b() == 5;
+            final Kate kate = new Kate();
+            assert library.register(kate);
+            assert live.b() == 4;
+            assert library.unregister(kate);
+            assert live.b() == 5;
+            library.setLazy(true);
+            final Q lazy = library.lookFor(Q.class);
+            assert lazy.a() == 1;
+            assert lazy.b() == 5;
+        }
+    }
+    
+    @Test
+    public void foreignLoader() throws Exception {
+        final CompiledEndpointLibrary library = new CompiledEndpointLibrary();
+        //region Stubs
+        class Loader extends ClassLoader {
+            Loader() {
+                super(CompiledEndpointLibraryTest.class.getClassLoader());
+            }
+            
+            Class<?> copy(Class<?> type) throws IOException {
+                final String name = type.getName();
+                try (final InputStream stream = type.getResourceAsStream('/' + name.replace('.', '/') + ".class")) {
+                    final byte[] bytes = stream.readAllBytes();
+                    return this.defineClass(name, bytes, 0, bytes.length);
+                }
+            }
+        }
+        //endregion
+        final Class<?> type = new Loader().copy(Bob.class);
+        assert type != Bob.class;
+        assert library.register(new Alice());
+        final Object[] endpoints = {library.lookFor(type), library.lookForLive(type), library.lookForBroadcast(type)};
+        for (final Object endpoint : endpoints) {
+            assert type.isInstance(endpoint);
+            assert (int) type.getMethod("a").invoke(endpoint) == 1;
+            assert (int) type.getMethod("b").invoke(endpoint) == 2;
+        }
+        library.setLazy(true);
+        assert (int) type.getMethod("a").invoke(library.lookFor(type)) == 1;
     }
     
     //region Stubs
@@ -81,6 +741,159 @@ public class CompiledEndpointLibraryTest {
         }
     }
     
+    public static class Sarah {
+        public int a() {
+            return 3;
+        }
+        
+        public int b() {
+            return 4;
+        }
+    }
+    
+    public interface Economy {
+        void deposit(int id, long amount, double multiplier);
+        
+        double balance(int id);
+        
+        long count(short value);
+        
+        double rate();
+        
+        Object name();
+        
+        long last();
+        
+        void reset();
+    }
+    
+    public interface Accounts {
+        CompletableFuture<Void> deposit(int id, int amount, double multiplier);
+        
+        CompletableFuture<Double> balance(int id);
+        
+        Future<Integer> count(short value);
+        
+        CompletableFuture<? extends Number> rate();
+        
+        CompletionStage<Object> name();
+        
+        long last();
+    }
+    
+    public static class Ledger {
+        private double balance;
+        private long last;
+        
+        public void deposit(long id, long amount, double multiplier) {
+            this.last = id;
+            this.balance += amount * multiplier;
+        }
+        
+        public double balance(long id) {
+            return balance;
+        }
+        
+        public int count(int value) {
+            return value + 1;
+        }
+        
+        public float rate() {
+            return 1.5F;
+        }
+        
+        public String name() {
+            return "ledger";
+        }
+        
+        public long last() {
+            return last;
+        }
+        
+        public double reset() {
+            final double old = balance;
+            this.balance = 0;
+            return old;
+        }
+    }
+    
+    public interface Plugins {
+        void reset();
+        
+        String[] name();
+        
+        @Broadcast(Reduction.SUM)
+        long online(int world);
+        
+        @Broadcast(Reduction.ANY)
+        boolean has(int id);
+        
+        @Broadcast(Reduction.ALL)
+        boolean ready();
+        
+        Object owner(int id);
+        
+        int version();
+    }
+    
+    public static class Alpha {
+        private int resets;
+        
+        public void reset() {
+            this.resets++;
+        }
+        
+        public String name() {
+            return "alpha";
+        }
+        
+        public int online(int world) {
+            return world;
+        }
+        
+        public boolean has(int id) {
+            return id == 1;
+        }
+        
+        public boolean ready() {
+            return true;
+        }
+        
+        public String owner(int id) {
+            return null;
+        }
+        
+        public int version() {
+            return 1;
+        }
+    }
+    
+    static class Beta {
+        static String owner(int id) {
+            return id == 1 ? "beta" : null;
+        }
+        
+        String name() {
+            return "beta";
+        }
+        
+        long online(long world) {
+            return world * 2;
+        }
+        
+        boolean has(int id) {
+            return id == 2;
+        }
+        
+        boolean ready() {
+            return false;
+        }
+        
+        int version() {
+            return 2;
+        }
+    }
+    
     public static class Jeremy {
         public int c() {
             return 5;
@@ -90,6 +903,131 @@ public class CompiledEndpointLibraryTest {
             return 6;
         }
     }
+    
+    public interface Wallet {
+        @Alias({"getMoney", "balance"})
+        double getBalance(String name);
+        
+        long count(int value);
+        
+        long total(Integer value);
+        
+        int letter(Character value);
+        
+        void deposit(int amount);
+        
+        Object name();
+    }
+    
+    public static class Vault {
+        public double balance(String name) {
+            return 1;
+        }
+    }
+    
+    public static class Bank {
+        public double getMoney(String name) {
+            return name.length() * 2;
+        }
+        
+        public Integer count(Integer value) {
+            return value + 1;
+        }
+        
+        public long total(long value) {
+            return value * 2;
+        }
+        
+        public char letter(char value) {
+            return value;
+        }
+        
+        public boolean deposit(Number amount) {
+            return amount.intValue() > 0;
+        }
+        
+        public String name() {
+            return "bank";
+        }
+    }
+    
+    public interface Hosting {
+        String greet();
+        
+        int twice(int value);
+    }
+    
+    public interface Greeter {
+        default String greet() {
+            return "hello";
+        }
+    }
+    
+    public static class Host implements Greeter {
+        public static int twice(int value) {
+            return value * 2;
+        }
+    }
+    
+    public interface Named<Type> {
+        Type name();
+        
+        void rename(Type name);
+        
+        default String describe() {
+            return "named " + this.name();
+        }
+    }
+    
+    public interface Identified {
+        Object id();
+        
+        default int rank() {
+            return 0;
+        }
+    }
+    
+    public interface Member extends Named<String>, Identified {
+        @Override
+        String id();
+    }
+    
+    public static class Person {
+        private String name = "alice";
+        
+        public String name() {
+            return name;
+        }
+        
+        public void rename(String name) {
+            this.name = name;
+        }
+        
+        public String id() {
+            return "7";
+        }
+    }
+    
+    public static class Ranked {
+        public int rank() {
+            return 3;
+        }
+    }
+    
+    public interface Pocket {
+        @Alias("getMoney")
+        int balance();
+    }
+    
+    public interface Purse {
+        int balance();
+    }
+    
+    public static class Teller {
+        public int getMoney() {
+            return 4;
+        }
+    }
     //endregion
     
 }
@@ -1,11 +1,19 @@
 package mx.kenzie.librarian.test;
 
+import mx.kenzie.librarian.Alias;
 import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.RemoteBatch;
 import mx.kenzie.librarian.RemoteLibrary;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
 import org.junit.Test;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class RemoteLibraryTest {
     
@@ -44,4 +52,217 @@ public class RemoteLibraryTest {
         assert library.empty() > 0;
     }
     
+    @Test
+    public void batch() {
+        final RemoteLibrary library = new RemoteLibrary();
+        //region Stubs
+        interface Counter extends Remote {
+            int add(int amount) throws RemoteException;
+            
+            String name(String prefix) throws RemoteException;
+            
+            void fail() throws RemoteException;
+        }
+        
+        interface Counting {
+            int add(int amount);
+            
+            String name(String prefix);
+            
+            void fail();
+        }
+        
+        interface Missing {
+            int missing();
+        }
+        
+        class Tally implements Counter {
+            final List<Integer> seen = new ArrayList<>();
+            int total;
+            
+            public int add(int amount) {
+                this.seen.add(amount);
+                return total += amount;
+            }
+            
+            public String name(String prefix) {
+                return prefix + total;
+            }
+            
+            public void fail() {
+                throw new IllegalStateException("Failed.");
+            }
+        }
+        //endregion
+        final Tally tally = new Tally();
+        assert library.register(tally);
+        assert library.resourceCount() == 1;
+        assert library.getResources().length == 1;
+        final RemoteBatch batch = library.batch();
+        final List<CompletableFuture<Integer>> sums = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            final int amount = i;
+            sums.add(batch.submit(Counting.class, counter -> counter.add(amount)));
+        }
+        final CompletableFuture<String> name = batch.submit(Counting.class, counter -> counter.name("total "));
+        final CompletableFuture<Void> fail = batch.run(Counting.class, Counting::fail);
+        final CompletableFuture<Integer> missing = batch.submit(Missing.class, Missing::missing);
+        assert batch.size() == 13;
+        assert tally.seen.isEmpty();
+        batch.flush();
+        assert batch.size() == 0;
+        for (int i = 0; i < 10; i++) {
+            assert tally.seen.get(i) == i + 1;
+            assert sums.get(i).join() == (i + 1) * (i + 2) / 2;
+        }
+        assert name.join().equals("total 55");
+        try {
+            fail.join();
+            assert false;
+        } catch (CompletionException ex) {
+            assert ex.getCause() instanceof IllegalStateException;
+        }
+        try {
+            missing.join();
+            assert false;
+        } catch (CompletionException ex) {
+            assert ex.getCause() instanceof UnmatchedEndpointException;
+        }
+        final CompletableFuture<Integer> first = batch.submit(Counting.class, counter -> counter.add(1));
+        batch.flushAsync();
+        final CompletableFuture<Integer> second = batch.submit(Counting.class, counter -> counter.add(2));
+        batch.flush();
+        assert first.join() == 56;
+        assert second.join() == 58;
+        assert library.empty() == 1;
+        assert library.resourceCount() == 0;
+    }
+    
+    @Test
+    public void batchMatched() {
+        final RemoteLibrary library = new RemoteLibrary();
+        //region Stubs
+        interface Counter extends Remote {
+            int add(int amount) throws RemoteException;
+        }
+        
+        interface Summing {
+            @Alias("add")
+            long sum(Integer amount);
+        }
+        
+        class Tally implements Counter {
+            int total;
+            
+            public int add(int amount) {
+                return total += amount;
+            }
+        }
+        //endregion
+        assert library.register(new Tally());
+        final RemoteBatch batch = library.batch();
+        final CompletableFuture<Long> first = batch.submit(Summing.class, summing -> summing.sum(3));
+        final CompletableFuture<Long> second = batch.submit(Summing.class, summing -> summing.sum(4));
+        batch.flush();
+        assert first.join() == 3L;
+        assert second.join() == 7L;
+        assert library.empty() == 1;
+    }
+    
+    @Test
+    public void cached() {
+        final RemoteLibrary library = new RemoteLibrary(), other = new RemoteLibrary();
+        library.setCacheDuration(Duration.ofHours(1));
+        //region Stubs
+        interface Jeremy extends Remote {
+            int a() throws RemoteException;
+        }
+        
+        interface Alice {
+            int a();
+        }
+        
+        class Bob implements Jeremy {
+            public int a() {
+                return 1;
+            }
+        }
+        
+        class Carl implements Jeremy {
+            public int a() {
+                return 2;
+            }
+        }
+        //endregion
+        assert library.register(new Bob());
+        assert library.resourceCount() == 1;
+        final Jeremy[] found = library.getAllResources(Jeremy.class);
+        assert found.length == 1;
+        assert library.getAllResources(Jeremy.class) == found;
+        assert library.getResource(Jeremy.class) == found[0];
+        assert other.register(new Carl());
+        assert library.resourceCount() == 1;
+        assert library.lookFor(Alice.class).a() == 1;
+        library.refresh();
+        assert library.resourceCount() == 2;
+        assert library.getAllResources(Jeremy.class).length == 2;
+        assert List.of(library.getAllResources(Jeremy.class)).contains(found[0]);
+        library.invalidate();
+        assert library.getAllResources(Jeremy.class) != found;
+        library.setCacheDuration(Duration.ZERO);
+        assert other.unregisterAll(Jeremy.class);
+        assert library.resourceCount() == 0;
+        assert library.getResource(Jeremy.class) == null;
+        library.empty();
+    }
+    
+    @Test
+    public void subscribed() {
+        final RemoteLibrary library = new RemoteLibrary(), other = new RemoteLibrary();
+        library.setCacheDuration(Duration.ofHours(1));
+        //region Stubs
+        interface Jeremy extends Remote {
+            int a() throws RemoteException;
+        }
+        
+        interface Alice {
+            int a();
+        }
+        
+        class Bob implements Jeremy {
+            public int a() {
+                return 1;
+            }
+        }
+        //endregion
+        assert library.subscribe();
+        assert !library.subscribe();
+        assert library.isSubscribed();
+        final Alice alice = library.lookFor(Alice.class);
+        try {
+            alice.a();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        final Bob bob = new Bob();
+        assert other.register(bob);
+        assert library.resourceCount() == 1;
+        assert library.getResource(Jeremy.class) != null;
+        assert alice.a() == 1;
+        assert other.unregister(bob);
+        assert library.resourceCount() == 0;
+        try {
+            alice.a();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        assert library.unsubscribe();
+        assert !library.isSubscribed();
+        assert other.register(bob);
+        assert library.resourceCount() == 0;
+        other.empty();
+    }
+
 }
@@ -1,9 +1,36 @@
 package mx.kenzie.librarian.test;
 
+import mx.kenzie.librarian.Alias;
+import mx.kenzie.librarian.BindingReport;
+import mx.kenzie.librarian.Broadcast;
+import mx.kenzie.librarian.EndpointCounter;
+import mx.kenzie.librarian.InvocationStrategy;
 import mx.kenzie.librarian.Library;
+import mx.kenzie.librarian.MethodMatcher;
+import mx.kenzie.librarian.RecordingMetrics;
+import mx.kenzie.librarian.Reduction;
 import mx.kenzie.librarian.SimpleLibrary;
+import mx.kenzie.librarian.error.EndpointInvocationException;
+import mx.kenzie.librarian.error.UnmatchedEndpointException;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class SimpleLibraryTest {
     
     @Test
@@ -118,6 +145,844 @@ public class SimpleLibraryTest {
         assert library.getAllResources(Sarah.class).length == 1;
     }
     
+    @Test
+    public void strategies() {
+        //region Stubs
+        interface Bob {
+            int a(int value);
+            
+            void b();
+        }
+        
+        class Alice {
+            int a(int value) {
+                return value + 1;
+            }
+            
+            void b() {
+                throw new IllegalStateException();
+            }
+        }
+        //endregion
+        for (final InvocationStrategy strategy : InvocationStrategy.values()) {
+            final Library<Object> library = Library.create(strategy);
+            assert library.register(new Alice());
+            final Bob bob = library.lookFor(Bob.class);
+            assert bob.a(1) == 2;
+            assert bob.a(2) == 3;
+            try {
+                bob.b();
+                assert false;
+            } catch (IllegalStateException | EndpointInvocationException ex) {
+                assert strategy == InvocationStrategy.REFLECTION || ex instanceof IllegalStateException;
+            }
+        }
+    }
+    
+    @Test
+    public void cached() {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        class Alice {
+        }
+        class Sarah extends Alice {
+        }
+        //endregion
+        final Alice alice = new Alice();
+        library.register(alice);
+        final Alice[] first = library.getAllResources(Alice.class);
+        assert first.length == 1;
+        assert library.getAllResources(Alice.class) == first;
+        assert library.getAllResources(Sarah.class).length == 0;
+        library.register(new Sarah());
+        assert library.getAllResources(Alice.class).length == 2;
+        assert library.getAllResources(Sarah.class).length == 1;
+        assert library.unregisterAll(Sarah.class);
+        assert library.getAllResources(Alice.class).length == 1;
+        assert library.getAllResources(Sarah.class).length == 0;
+        assert library.unregister(alice);
+        assert library.getResource(Alice.class) == null;
+    }
+    
+    @Test
+    public void typedArraysUnload() throws Exception {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        class Token {
+        }
+        class Loader extends ClassLoader {
+            Class<?> copy(Class<?> type) throws IOException {
+                final String name = type.getName();
+                try (final InputStream stream = type.getResourceAsStream('/' + name.replace('.', '/') + ".class")) {
+                    final byte[] bytes = stream.readAllBytes();
+                    return this.defineClass(name, bytes, 0, bytes.length);
+                }
+            }
+        }
+        //endregion
+        library.register(new Token());
+        Class<?> type = new Loader().copy(Token.class);
+        assert type != Token.class;
+        assert library.getAllResources(type).length == 0;
+        final WeakReference<Class<?>> reference = new WeakReference<>(type);
+        type = null;
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert reference.get() == null;
+        assert library.getAllResources(Token.class).length == 1;
+        assert library.empty() == 1;
+        assert library.getAllResources(Token.class).length == 0;
+        assert library.register(new Token());
+        assert library.getAllResources(Token.class).length == 1;
+    }
+    
+    @Test
+    public void live() {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int a(int value);
+            
+            String b();
+        }
+        
+        class Alice {
+            int a(long value) {
+                return (int) value + 1;
+            }
+        }
+        
+        class Sarah {
+            int a(int value) {
+                return value * 2;
+            }
+            
+            String b() {
+                return "Sarah";
+            }
+        }
+        //endregion
+        final Bob bob = library.lookForLive(Bob.class);
+        assert library.lookForLive(Bob.class) == bob;
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        assert bob.a(2) == 3;
+        try {
+            bob.b();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        assert library.unregister(alice);
+        assert library.register(new Sarah());
+        assert bob.a(2) == 4;
+        assert bob.b().equals("Sarah");
+        assert library.unregisterAll(Sarah.class);
+        try {
+            bob.a(2);
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+    }
+    
+    @Test
+    public void broadcast() {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int[] a(int value);
+            
+            @Broadcast(Reduction.SUM)
+            double b();
+            
+            @Broadcast(Reduction.ALL)
+            boolean c();
+            
+            String d();
+        }
+        
+        class Alice {
+            int a(long value) {
+                return (int) value + 1;
+            }
+            
+            float b() {
+                return 1.5F;
+            }
+            
+            boolean c() {
+                return true;
+            }
+        }
+        
+        class Sarah {
+            int a(int value) {
+                return value * 2;
+            }
+            
+            double b() {
+                return 2;
+            }
+            
+            boolean c() {
+                return true;
+            }
+            
+            String d() {
+                return "Sarah";
+            }
+        }
+        //endregion
+        assert library.register(new Alice());
+        assert library.register(new Sarah());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (final Bob bob : new Bob[]{library.lookForBroadcast(Bob.class), library.lookForBroadcast(Bob.class, executor)}) {
+                assert Arrays.equals(bob.a(3), new int[]{4, 6});
+                assert bob.b() == 3.5;
+                assert bob.c();
+                assert bob.d().equals("Sarah");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assert library.unregisterAll(Sarah.class);
+        final Bob bob = library.lookForBroadcast(Bob.class);
+        assert bob.a(3).length == 1;
+        assert bob.d() == null;
+    }
+    
+    @Test
+    public void async() throws Exception {
+        final SimpleLibrary library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            CompletableFuture<Integer> a(int value);
+            
+            CompletionStage<String> b();
+            
+            CompletableFuture<Void> c();
+        }
+        
+        class Alice {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicInteger running = new AtomicInteger();
+            
+            int a(int value) throws InterruptedException {
+                assert running.incrementAndGet() == 1;
+                latch.await();
+                running.decrementAndGet();
+                return value + 1;
+            }
+            
+            String b() {
+                return Thread.currentThread().getName();
+            }
+            
+            void c() {
+                throw new IllegalStateException();
+            }
+        }
+        //endregion
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        library.setAsyncLimit(1);
+        final Bob bob = library.lookFor(Bob.class);
+        final CompletableFuture<Integer> first = bob.a(1), second = bob.a(2);
+        assert !first.isDone() && !second.isDone();
+        alice.latch.countDown();
+        assert first.get() == 2;
+        assert second.get() == 3;
+        assert !bob.b().toCompletableFuture().get().equals(Thread.currentThread().getName());
+        try {
+            bob.c().get();
+            assert false;
+        } catch (ExecutionException ex) {
+            assert ex.getCause() instanceof IllegalStateException;
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "Bob"));
+        try {
+            library.setAsyncExecutor(executor);
+            assert bob.b().toCompletableFuture().get().equals("Bob");
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void bulk() {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int a();
+        }
+        
+        interface Jeremy {
+            String b();
+        }
+        
+        class Alice {
+            int a() {
+                return 1;
+            }
+        }
+        
+        class Sarah {
+            String b() {
+                return "Sarah";
+            }
+        }
+        //endregion
+        final Bob live = library.lookForLive(Bob.class);
+        final Alice alice = new Alice();
+        assert !library.registerAll(List.of());
+        assert library.registerAll(List.of(alice, new Sarah(), new Alice()));
+        assert library.resourceCount() == 3;
+        assert library.getAllResources(Alice.class).length == 2;
+        assert library.getResource(Alice.class) == alice;
+        assert live.a() == 1;
+        final Object[] endpoints = library.lookForAll(Bob.class, Jeremy.class);
+        assert ((Bob) endpoints[0]).a() == 1;
+        assert ((Jeremy) endpoints[1]).b().equals("Sarah");
+    }
+    
+    @Test
+    public void report() {
+        final SimpleLibrary library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b(int value);
+        }
+        
+        class Alice {
+            int a() {
+                return 1;
+            }
+        }
+        //endregion
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        final BindingReport report = library.report(Bob.class);
+        assert report.query() == Bob.class;
+        assert !report.isComplete();
+        assert report.getMatched().size() == 1;
+        assert report.getMatched().get(0).resource() == alice;
+        assert report.getMatched().get(0).target().getName().equals("a");
+        assert report.getUnmatched().get(0).method().getName().equals("b");
+        library.setStrict(true);
+        try {
+            library.lookFor(Bob.class);
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert ex.getMessage().contains("Bob.b(int)");
+        }
+        library.setStrict(false);
+        assert library.lookFor(Bob.class).a() == 1;
+    }
+    
+    @Test
+    public void defaults() {
+        //region Stubs
+        interface Bob {
+            @Broadcast(Reduction.SUM)
+            int a();
+            
+            int b();
+        }
+        
+        class Alice {
+            public int a() {
+                return 2;
+            }
+        }
+        
+        class Listing implements Library<Object> {
+            final List<Object> resources = new ArrayList<>();
+            
+            public boolean register(Object resource) {
+                return resources.add(resource);
+            }
+            
+            public boolean unregister(Object resource) {
+                return resources.remove(resource);
+            }
+            
+            public boolean unregisterAll(Class<?> type) {
+                return resources.removeIf(type::isInstance);
+            }
+            
+            public boolean unregisterAll() {
+                return this.empty() > 0;
+            }
+            
+            public int empty() {
+                final int size = resources.size();
+                resources.clear();
+                return size;
+            }
+            
+            public int resourceCount() {
+                return resources.size();
+            }
+            
+            public Object[] getResources() {
+                return resources.toArray();
+            }
+            
+            public <Query> Query getResource(Class<Query> type) {
+                throw new UnsupportedOperationException();
+            }
+            
+            public <Query> Query[] getAllResources(Class<Query> type) {
+                throw new UnsupportedOperationException();
+            }
+            
+            public <Query> Query lookFor(Class<? extends Query> type) {
+                throw new UnsupportedOperationException();
+            }
+            
+            public Method lookForMethod(Class<?> returnType, String name, Class<?>... parameters) {
+                throw new UnsupportedOperationException();
+            }
+        }
+        //endregion
+        final Library<Object> library = new Listing();
+        final Alice alice = new Alice();
+        assert library.register(alice);
+        assert library.register(new Alice());
+        final BindingReport report = library.report(Bob.class);
+        assert report.getMatched().size() == 1;
+        assert report.getMatched().get(0).resource() == alice;
+        assert report.getUnmatched().get(0).method().getName().equals("b");
+        assert library.<Bob>lookForBroadcast(Bob.class).a() == 4;
+    }
+    
+    @Test
+    public void matching() {
+        //region Stubs
+        interface Bob {
+            @Alias("getMoney")
+            double balance(String name);
+            
+            long count(int value);
+            
+            void reset(int value);
+        }
+        
+        class Alice {
+            double getMoney(CharSequence name) {
+                return name.length();
+            }
+            
+            Integer count(Integer value) {
+                return value + 1;
+            }
+        }
+        
+        class Sarah {
+            double balance(String name) {
+                return 2;
+            }
+            
+            boolean reset(long value) {
+                return true;
+            }
+        }
+        //endregion
+        for (final InvocationStrategy strategy : InvocationStrategy.values()) {
+            final SimpleLibrary library = new SimpleLibrary(strategy);
+            assert library.register(new Alice());
+            final Bob live = library.lookForLive(Bob.class);
+            assert live.balance("alice") == 5;
+            assert library.register(new Sarah());
+            final Bob bob = library.lookFor(Bob.class);
+            assert bob.balance("alice") == 2;
+            assert live.balance("alice") == 2;
+            assert bob.count(1) == 2;
+            bob.reset(1);
+            assert library.report(Bob.class).isComplete();
+            library.setMatcher((returnType, parameters, candidate) -> candidate.getName().equals("count") ? 0 : MethodMatcher.NO_MATCH);
+            assert library.report(Bob.class).getMatched().size() == 1;
+            assert live.count(1) == 2;
+            try {
+                live.balance("alice");
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+        }
+    }
+    
+    @Test
+    public void lazy() throws NoSuchMethodException {
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b();
+            
+            int c();
+        }
+        
+        class Alice {
+            int a() {
+                return 1;
+            }
+        }
+        
+        class Sarah {
+            int b() {
+                return 2;
+            }
+        }
+        //endregion
+        for (final InvocationStrategy strategy : InvocationStrategy.values()) {
+            final RecordingMetrics metrics = new RecordingMetrics();
+            final SimpleLibrary library = new SimpleLibrary(strategy, metrics);
+            library.setLazy(true);
+            assert library.isLazy();
+            assert library.register(new Alice());
+            final Bob bob = library.lookFor(Bob.class);
+            assert metrics.getUnmatched().isEmpty();
+            assert library.register(new Sarah());
+            assert bob.a() == 1;
+            assert bob.b() == 2;
+            try {
+                bob.c();
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert metrics.getUnmatched().contains(Bob.class.getDeclaredMethod("c"));
+            }
+            assert bob.a() == 1;
+            library.setStrict(true);
+            try {
+                library.lookFor(Bob.class);
+                assert false;
+            } catch (UnmatchedEndpointException ex) {
+                assert true;
+            }
+        }
+    }
+    
+    @Test
+    public void inherited() {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b();
+        }
+        
+        class Alice {
+            public int a() {
+                return 1;
+            }
+        }
+        
+        class Sarah extends Alice {
+            public int b() {
+                return 2;
+            }
+        }
+        //endregion
+        final Sarah sarah = new Sarah();
+        assert library.register(sarah);
+        final Bob bob = library.lookFor(Bob.class);
+        assert bob.a() == 1;
+        assert bob.b() == 2;
+        assert library.lookForMethod(int.class, "a") != null;
+        assert library.unregister(sarah);
+        assert library.lookForMethod(int.class, "a") == null;
+    }
+    
+    @Test
+    public void hierarchy() {
+        //region Stubs
+        interface Named<Type> {
+            Type name();
+            
+            void rename(Type name);
+            
+            default String describe() {
+                return "named " + this.name();
+            }
+        }
+        
+        interface Identified {
+            Object id();
+            
+            default int rank() {
+                return 0;
+            }
+        }
+        
+        interface Member extends Named<String>, Identified {
+            @Override
+            String id();
+        }
+        
+        class Person {
+            private String name = "alice";
+            
+            String name() {
+                return name;
+            }
+            
+            void rename(String name) {
+                this.name = name;
+            }
+            
+            String id() {
+                return "7";
+            }
+        }
+        
+        class Ranked {
+            int rank() {
+                return 3;
+            }
+        }
+        //endregion
+        for (final InvocationStrategy strategy : InvocationStrategy.values()) {
+            final SimpleLibrary library = new SimpleLibrary(strategy, new RecordingMetrics());
+            library.setStrict(true);
+            assert library.register(new Person());
+            final Member member = library.lookFor(Member.class);
+            assert member.name().equals("alice");
+            member.rename("bob");
+            assert member.name().equals("bob");
+            assert member.describe().equals("named bob");
+            assert member.rank() == 0;
+            assert ((Identified) member).id().equals("7");
+            assert library.report(Member.class).isComplete();
+            assert library.register(new Ranked());
+            assert ((Member) library.lookFor(Member.class)).rank() == 3;
+            final Member broadcast = library.lookForBroadcast(Member.class);
+            assert broadcast.rank() == 3;
+            assert broadcast.describe().equals("named bob");
+            library.setLazy(true);
+            final Member lazy = library.lookFor(Member.class);
+            assert lazy.describe().equals("named bob");
+            assert lazy.id().equals("7");
+        }
+    }
+    
+    @Test
+    public void children() {
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b();
+            
+            @Broadcast(Reduction.SUM)
+            int total();
+        }
+        
+        class Alice {
+            int a() {
+                return 1;
+            }
+            
+            int total() {
+                return 1;
+            }
+        }
+        
+        class Sarah {
+            int a() {
+                return 3;
+            }
+            
+            int b() {
+                return 2;
+            }
+            
+            int total() {
+                return 2;
+            }
+        }
+        //endregion
+        final SimpleLibrary parent = new SimpleLibrary();
+        final SimpleLibrary child = parent.createChild();
+        final SimpleLibrary sibling = parent.createChild();
+        assert parent.register(new Alice());
+        final Bob live = child.lookForLive(Bob.class);
+        assert live.a() == 1;
+        assert child.register(new Sarah());
+        assert live.a() == 3;
+        assert live.b() == 2;
+        assert ((Bob) child.lookFor(Bob.class)).a() == 3;
+        assert ((Bob) parent.lookFor(Bob.class)).a() == 1;
+        assert ((Bob) sibling.lookFor(Bob.class)).a() == 1;
+        assert ((Bob) child.lookForBroadcast(Bob.class)).total() == 3;
+        assert child.getAllResources(Object.class).length == 2;
+        assert parent.getResource(Sarah.class) == null;
+        assert child.lookForMethod(int.class, "total") != null;
+        try {
+            ((Bob) sibling.lookFor(Bob.class)).b();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        final Bob grandchild = child.createChild().lookForLive(Bob.class);
+        assert grandchild.a() == 3;
+        assert parent.empty() == 1;
+        assert ((Bob) child.lookForBroadcast(Bob.class)).total() == 2;
+        assert grandchild.b() == 2;
+        assert child.empty() == 1;
+        try {
+            grandchild.a();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+    }
+    
+    @Test
+    public void metrics() throws NoSuchMethodException {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final Library<Object> library = new SimpleLibrary(InvocationStrategy.METHOD_HANDLE, metrics);
+        //region Stubs
+        interface Bob {
+            int a();
+            
+            int b();
+        }
+        
+        class Alice {
+            public int a() {
+                throw new IllegalStateException();
+            }
+        }
+        //endregion
+        assert library.register(new Alice());
+        final Bob bob = library.lookFor(Bob.class);
+        try {
+            bob.a();
+            assert false;
+        } catch (IllegalStateException ex) {
+            assert true;
+        }
+        try {
+            bob.b();
+            assert false;
+        } catch (UnmatchedEndpointException ex) {
+            assert true;
+        }
+        final EndpointCounter counter = metrics.getCounter(Bob.class.getMethod("a"));
+        assert counter.getCalls() == 1;
+        assert counter.getFailures() == 1;
+        assert metrics.getCounter(Bob.class.getMethod("b")).getFailures() == 1;
+        assert metrics.getUnmatched().contains(Bob.class.getMethod("b"));
+        assert metrics.getBindings() == 1;
+        assert metrics.getCacheHitRate() == 0;
+    }
+    
+    @Test
+    public void concurrent() throws Throwable {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        interface Bob {
+            int a();
+        }
+        
+        class Alice {
+            public int a() {
+                return 1;
+            }
+        }
+        
+        class Jeremy {
+        }
+        //endregion
+        assert library.register(new Alice());
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 2000; j++) {
+                        final Jeremy jeremy = new Jeremy();
+                        assert library.register(jeremy);
+                        assert library.unregister(jeremy);
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 2000; j++) {
+                        assert library.getResource(Alice.class) != null;
+                        assert library.getAllResources(Alice.class).length == 1;
+                        assert library.lookFor(Bob.class).a() == 1;
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+        for (final Thread thread : threads) thread.start();
+        start.countDown();
+        for (final Thread thread : threads) thread.join();
+        if (!errors.isEmpty()) throw errors.peek();
+        assert library.resourceCount() == 1;
+        assert library.getAllResources(Jeremy.class).length == 0;
+    }
+    
+    @Test
+    public void concurrentTypes() throws Throwable {
+        final Library<Object> library = new SimpleLibrary();
+        //region Stubs
+        class Jeremy {
+        }
+        //endregion
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            try {
+                start.await();
+                for (int j = 0; j < 2000; j++) {
+                    final Jeremy jeremy = new Jeremy();
+                    assert library.register(jeremy);
+                    assert library.register(new Jeremy());
+                    assert library.unregister(jeremy);
+                    assert library.empty() == 1;
+                }
+            } catch (Throwable ex) {
+                errors.add(ex);
+            }
+        }));
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 20000; j++) assert library.getAllResources(Jeremy.class).length <= 2;
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+        for (final Thread thread : threads) thread.start();
+        start.countDown();
+        for (final Thread thread : threads) thread.join();
+        if (!errors.isEmpty()) throw errors.peek();
+        assert library.getAllResources(Jeremy.class).length == 0;
+        assert library.register(new Jeremy());
+        assert library.getAllResources(Jeremy.class).length == 1;
+    }
+    
     @Test
     public void example() {
         final Library<Object> library = new SimpleLibrary();